@@ -1,25 +1,32 @@
 package com.malush.saga;
 
-import com.codebullets.sagalib.*;
-import com.codebullets.sagalib.startup.EventStreamBuilder;
+import com.malush.saga.audit.AuditEvent;
+import com.malush.saga.audit.AuditTrail;
 import com.malush.saga.interceptor.CustomSagaInterceptor;
+import com.malush.saga.orchestrator.SagaOrchestrator;
+import com.malush.saga.orchestrator.SagaTypeRegistration;
+import com.malush.saga.replay.TraceRecorder;
 import com.malush.saga.storage.CustomStorage;
 import com.malush.saga.workflow.buy.CompensateTicketRequest;
 import com.malush.saga.workflow.buy.SellTicketRequest;
+import com.malush.saga.workflow.buy.SellTicketSaga;
 import com.malush.saga.workflow.buy.SellTicketSagaProviderFactory;
 import com.malush.saga.workflow.buy.SellTicketState;
+import com.malush.saga.workflow.participants.itms.ITMS;
 import com.malush.saga.workflow.participants.rms.reply.ChargeRetailerReply;
 import com.malush.saga.workflow.participants.rms.reply.CompensateRetailerReply;
 import com.malush.saga.workflow.participants.rms.reply.RMSReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Simple lightweight application showcasing the basic usage of saga-lib in the context of Microservice Architecture
@@ -33,18 +40,38 @@ import java.util.concurrent.TimeUnit;
  * 5. run the script, e.g. ./saga-lib-simple
  * <p>
  * To turn on the debug log, go to saga-lib-playground/saga-lib-simple/src/main/resources/log4j2.yml and change root log level from info to debug
+ * <p>
+ * To record all messages fed into the message stream, start the app with -Dsaga.trace=/path/to/file.trace.
+ * The recorded trace can be replayed with {@link com.malush.saga.replay.TraceReplayer}.
+ * <p>
+ * Sagas are hosted by the {@link SagaOrchestrator}, which gives every saga type its own message stream, storage and
+ * executor. The executor in main only simulates the REST, RMS reply and scheduler threads.
+ * <p>
+ * Handling a message does not log, the saga steps are recorded in the {@link AuditTrail}. The trail of a saga is logged
+ * only when the saga compensates, hangs or fails.
  */
 public class Main {
   private static Logger log = LoggerFactory.getLogger(Main.class);
 
-  private static SellTicketSagaProviderFactory sellTicketsSagaProviderFactory = new SellTicketSagaProviderFactory();
+  private static AuditTrail auditTrail = new AuditTrail();
+  private static SellTicketSagaProviderFactory sellTicketsSagaProviderFactory = new SellTicketSagaProviderFactory(auditTrail);
   private static CustomStorage customStorage = new CustomStorage();
   private static CustomSagaInterceptor interceptor = new CustomSagaInterceptor();
-  private static final MessageStream sellTicketsMsgStream = EventStreamBuilder.configure()
-      .usingStorage(customStorage)
-      .usingSagaProviderFactory(sellTicketsSagaProviderFactory)
-      .callingInterceptor(interceptor)
-      .build();
+  private static TraceRecorder traceRecorder = TraceRecorder.fromSystemProperty();
+  private static final SagaOrchestrator orchestrator = new SagaOrchestrator()
+      .register(SagaTypeRegistration.forSaga(SellTicketSaga.class)
+          .usingStorage(customStorage)
+          .usingSagaProviderFactory(sellTicketsSagaProviderFactory)
+          .callingInterceptor(interceptor)
+          .callingInterceptor(traceRecorder)
+          .beforeHandling(traceRecorder::record)
+          .onHandlerError(Main::onHandlerError)
+          .withThreads(2)
+          .handling(SellTicketRequest.class, ChargeRetailerReply.class, CompensateRetailerReply.class, CompensateTicketRequest.class));
+
+  static {
+    orchestrator.start();
+  }
 
   /**
    * Library usage examples
@@ -158,9 +185,46 @@ public class Main {
       } catch (InterruptedException e){
         executor.shutdownNow();
       }
+      //report while the bulkheads are still up, shutting them down empties the pools
+      orchestrator.reportMetrics();
+      orchestrator.shutdown(2, TimeUnit.SECONDS);
+      traceRecorder.close();
     }
   }
 
+  /**
+   * Every message that enters the message stream goes through here. The orchestrator routes the message to the saga
+   * type handling it, where it is recorded for a later replay right before it is handled asynchronously.
+   *
+   * @return false if the message was rejected because its saga type is saturated
+   */
+  private static boolean handle(Object message) {
+    return orchestrator.dispatch(message);
+  }
+
+  /**
+   * Messages are handled asynchronously on the executor of their saga type, so a failing handler never reaches the
+   * thread that dispatched the message. The orchestrator reports the failure here instead.
+   */
+  private static void onHandlerError(Object message, Exception error) {
+    String requestId = requestIdOf(message);
+    if (requestId != null) {
+      auditTrail.record(requestId, AuditEvent.HANDLER_ERROR);
+      auditTrail.dump(requestId, "message handling failed: " + error);
+    }
+  }
+
+  private static String requestIdOf(Object message) {
+    if (message instanceof SellTicketRequest) {
+      return ((SellTicketRequest) message).requestId;
+    } else if (message instanceof CompensateTicketRequest) {
+      return ((CompensateTicketRequest) message).requestId;
+    } else if (message instanceof RMSReply) {
+      return ((RMSReply) message).requestId;
+    }
+    return null;
+  }
+
   /**
    * We want to simulate a REST API usage as in the real scenario REST most probably be used as an entry point to Saga.
    * The API is used by a client application when it wants to start a saga workflow
@@ -177,19 +241,21 @@ public class Main {
 
     @Override
     public void run() {
-      log.info("Starting restAPI thread: {}", Thread.currentThread().getName());
-      log.info("Sell Ticket REST API call: requestId = {}, retailerId = {}, amount = {}", request.requestId, request.retailerId, request.amount);
-      try {
-        //start the saga by forwarding the request to the StartSaga event handler
-        sellTicketsMsgStream.handle(request);
-      } catch (Exception e) {
-        log.error("Exception while trying to handle sellTicketRequest: ", e);
+      log.debug("Starting restAPI thread: {}", Thread.currentThread().getName());
+      auditTrail.record(request.requestId, AuditEvent.REST_REQUEST_RECEIVED, request.amount);
+      //start the saga by forwarding the request to the StartSaga event handler
+      if (handle(request)) {
+        //Interceptor is used to detect if saga was successfully completed or if compensation was triggered in order to be able to return a response back to the client.
+        //By calling the getSagaResult method here we will put the thread into a waiting state. The thread is unblocked on successful saga completion or if compensation is triggered.
+        String result = interceptor.getSagaResult(request.requestId);
+        auditTrail.record(request.requestId, AuditEvent.REST_RESPONSE_SENT, CustomSagaInterceptor.SAGA_COMPENSATED.equals(result));
+      } else {
+        //no saga was started, so no result will ever come: fail the request right away instead of waiting for one
+        log.warn("Sell ticket request rejected, the service is overloaded: requestId = {}", request.requestId);
+        auditTrail.dump(request.requestId, "sell ticket request rejected");
+        auditTrail.discard(request.requestId);
       }
-      //Interceptor is used to detect if saga was successfully completed or if compensation was triggered in order to be able to return a response back to the client.
-      //By calling the getSagaResult method here we will put the thread into a waiting state. The thread is unblocked on successful saga completion or if compensation is triggered.
-      String result = interceptor.getSagaResult(request.requestId);
-      log.info("Sell Ticket REST API response: requestId = {}, message = {}", request.requestId, result);
-      log.info("Exiting restAPI thread: {}", Thread.currentThread().getName());
+      log.debug("Exiting restAPI thread: {}", Thread.currentThread().getName());
     }
   }
 
@@ -211,29 +277,9 @@ public class Main {
 
     @Override
     public void run() {
-      log.info("Starting rmsReply thread: {}", Thread.currentThread().getName());
-      Optional.of(reply)
-          .filter(ChargeRetailerReply.class::isInstance)
-          .map(ChargeRetailerReply.class::cast)
-          .ifPresent(reply -> {
-            try {
-              sellTicketsMsgStream.handle(reply);
-            } catch (Exception e) {
-              log.error("Message handling error", e);
-            }
-          });
-      Optional.of(reply)
-          .filter(CompensateRetailerReply.class::isInstance)
-          .map(CompensateRetailerReply.class::cast)
-          .ifPresent(reply -> {
-            try {
-              sellTicketsMsgStream.handle(reply);
-            } catch (Exception e) {
-              log.error("Message handling error", e);
-            }
-          });
-
-      log.info("Exiting rmsReply thread: {}", Thread.currentThread().getName());
+      log.debug("Starting rmsReply thread: {}", Thread.currentThread().getName());
+      handle(reply);
+      log.debug("Exiting rmsReply thread: {}", Thread.currentThread().getName());
     }
   }
 
@@ -257,29 +303,27 @@ public class Main {
 
     @Override
     public void run() {
-      log.info("Starting Scheduler thread: {}", Thread.currentThread().getName());
+      log.debug("Starting Scheduler thread: {}", Thread.currentThread().getName());
       //load all hanging saga's from db
       List<String> unfinishedSagas = customStorage.getUnfinishedSagasFromDB();
+      List<CompensateTicketRequest> compensations = new ArrayList<>();
+      List<String> lostRequestIds = new ArrayList<>();
       boolean sagaFoundInMemory = false;
       for (String requestId : unfinishedSagas) {
         //boolean sagaFoundInMemory = false;
         //try to find saga in memory
         Optional<SellTicketState> inMemoryState =
-            customStorage.load("SellTicketSaga", requestId)
+            customStorage.load(SellTicketSaga.class.getName(), requestId)
                 .stream()
                 .filter(SellTicketState.class::isInstance)
                 .map(SellTicketState.class::cast)
                 .findFirst();
 
         inMemoryState.ifPresent(state -> {
-          try {
-            // Only trigger compensation for those in-memory saga's that are already flagged for compensation.
-            // Otherwise it might be saga that is just starting or is waiting for all participants to reply before the saga timeout
-            if (state.isCompensationTriggered()) {
-              sellTicketsMsgStream.handle(new CompensateTicketRequest(state.getRequestId(), state.getAmount(), state.getRetailerId()));
-            }
-          } catch (Exception e) {
-            log.error("Message handling error", e);
+          // Only trigger compensation for those in-memory saga's that are already flagged for compensation.
+          // Otherwise it might be saga that is just starting or is waiting for all participants to reply before the saga timeout
+          if (state.isCompensationTriggered()) {
+            compensations.add(new CompensateTicketRequest(state.getRequestId(), state.getAmount(), state.getRetailerId()));
           }
         });
 
@@ -289,15 +333,35 @@ public class Main {
         // it might be good to be able to clear the memory and then rely only on database storage to be able to compensate all transactions and start clean.
         if(!inMemoryState.isPresent()) {
           SellTicketState state = customStorage.getSagaStateFromDB(requestId);
-          try {
-            sellTicketsMsgStream.handle(new CompensateTicketRequest(state.getRequestId(), state.getAmount(), state.getRetailerId()));
-          } catch (Exception e) {
-            log.error("Message handling error", e);
+          //null if the saga has finished since the DB was read
+          if (state != null) {
+            compensations.add(new CompensateTicketRequest(state.getRequestId(), state.getAmount(), state.getRetailerId()));
+            lostRequestIds.add(requestId);
           }
         }
       }
 
-      log.info("Exiting Scheduler thread: {}", Thread.currentThread().getName());
+      compensations.forEach(compensation -> {
+        //a saga keeps hanging until its compensation succeeds, log its trail only the first time it is found
+        auditTrail.dumpOnce(compensation.requestId, "hanging saga, compensation re-sent by the scheduler");
+        handle(compensation);
+      });
+
+      // The saga of an in-memory compensation reactivates its ticket in its handler. The sagas lost from memory have no
+      // handler left to do it, so their tickets are reactivated here, in one bulk transition. Tickets ITMS does not know
+      // were never sold and are left out.
+      ITMS itms = sellTicketsSagaProviderFactory.getItms();
+      List<String> reactivatedRequestIds = lostRequestIds.stream()
+          .filter(requestId -> itms.getTicketStatus(requestId) != null)
+          .collect(Collectors.toList());
+      itms.setTicketStatuses(reactivatedRequestIds, ITMS.Status.ACTIVATED);
+      reactivatedRequestIds.forEach(requestId ->
+          auditTrail.record(requestId, AuditEvent.ITMS_STATUS_SET, ITMS.Status.ACTIVATED.ordinal()));
+
+      // fold the state deltas written since the last run into the DB snapshots
+      customStorage.compactDB();
+
+      log.debug("Exiting Scheduler thread: {}", Thread.currentThread().getName());
     }
   }
 }
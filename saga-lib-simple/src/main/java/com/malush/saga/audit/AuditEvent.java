@@ -0,0 +1,60 @@
+package com.malush.saga.audit;
+
+/**
+ * Lifecycle events recorded by the {@link AuditTrail}. Every event carries one numeric argument whose meaning is given
+ * by its {@link Argument} and is only interpreted when the trail is dumped.
+ * <p>
+ * Only the events that start a saga's story open a trail for it, any other event is recorded only if the saga has one.
+ */
+public enum AuditEvent {
+  REST_REQUEST_RECEIVED(Argument.AMOUNT, true),
+  REST_RESPONSE_SENT(Argument.COMPENSATED),
+  SAGA_STARTED(Argument.AMOUNT, true),
+  RMS_CHARGE_SENT(Argument.AMOUNT),
+  TIMEOUT_REQUESTED(Argument.MILLIS),
+  CHARGE_REPLY_RECEIVED(Argument.SUCCESS),
+  REPLY_IGNORED(Argument.NONE),
+  ITMS_STATUS_SET(Argument.TICKET_STATUS),
+  TIMEOUT_FIRED(Argument.NONE),
+  COMPENSATION_TRIGGERED(Argument.NONE),
+  COMPENSATION_RESENT(Argument.NONE),
+  RMS_COMPENSATE_SENT(Argument.AMOUNT),
+  RMS_COMPENSATION_REPLY_RECEIVED(Argument.SUCCESS),
+  SAGA_FINISHED(Argument.NONE),
+  HANDLER_ERROR(Argument.NONE);
+
+  public enum Argument {
+    NONE,
+    AMOUNT,
+    MILLIS,
+    SUCCESS,
+    COMPENSATED,
+    TICKET_STATUS
+  }
+
+  private static final AuditEvent[] EVENTS = values();
+
+  private final Argument argument;
+  private final boolean opensTrail;
+
+  AuditEvent(Argument argument) {
+    this(argument, false);
+  }
+
+  AuditEvent(Argument argument, boolean opensTrail) {
+    this.argument = argument;
+    this.opensTrail = opensTrail;
+  }
+
+  public Argument getArgument() {
+    return argument;
+  }
+
+  public boolean opensTrail() {
+    return opensTrail;
+  }
+
+  static AuditEvent fromCode(int code) {
+    return code >= 0 && code < EVENTS.length ? EVENTS[code] : null;
+  }
+}
@@ -0,0 +1,212 @@
+package com.malush.saga.audit;
+
+import com.malush.saga.workflow.participants.itms.ITMS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Flight recorder of saga lifecycle events, replacing synchronous info logging on the message handling path.
+ * <p>
+ * Every saga gets its own small ring of fixed-size binary records, allocated once when the saga's first event is recorded
+ * (see {@link AuditEvent#opensTrail()}): a wall clock timestamp, the thread id together with the event code, and one
+ * numeric argument. Recording an event is a map lookup and a few array writes under the lock of that saga's ring, so
+ * only the handlers of the same saga ever wait for each other. There is no string formatting, no appender I/O and, after
+ * the first event of a saga, no allocation. When a ring is full its oldest records are overwritten, so it always holds
+ * the most recent history of its saga.
+ * <p>
+ * The records of a saga are turned into readable text and logged only when something went wrong with it: when it
+ * compensates, hangs or fails, see {@link #dump(String, String)}. A saga's trail is kept until it is discarded with
+ * {@link #discard(String)}, which is done once the saga has finished, so the trail kept in memory grows with the number
+ * of running sagas only.
+ */
+public class AuditTrail {
+
+  private static final int RECORD_LONGS = 3;
+  private static final int TIMESTAMP = 0;
+  private static final int THREAD_AND_EVENT = 1;
+  private static final int ARGUMENT = 2;
+
+  private final Logger log = LoggerFactory.getLogger(AuditTrail.class);
+
+  private final ConcurrentMap<String, SagaTrail> trails = new ConcurrentHashMap<>();
+  private final int recordsPerSaga;
+
+  public AuditTrail() {
+    this(32);
+  }
+
+  /**
+   * @param recordsPerSaga number of records kept per saga
+   */
+  public AuditTrail(int recordsPerSaga) {
+    if (recordsPerSaga < 1) {
+      throw new IllegalArgumentException("At least one record per saga is required, got " + recordsPerSaga);
+    }
+    this.recordsPerSaga = recordsPerSaga;
+  }
+
+  public void record(String id, AuditEvent event) {
+    record(id, event, 0L);
+  }
+
+  public void record(String id, AuditEvent event, boolean flag) {
+    record(id, event, flag ? 1L : 0L);
+  }
+
+  public void record(String id, AuditEvent event, double amount) {
+    record(id, event, Double.doubleToRawLongBits(amount));
+  }
+
+  public void record(String id, AuditEvent event, long argument) {
+    SagaTrail trail = trails.get(id);
+    if (trail == null) {
+      if (!event.opensTrail()) {
+        //the saga has finished already or its start was not recorded
+        return;
+      }
+      trail = trails.computeIfAbsent(id, key -> new SagaTrail(recordsPerSaga));
+    }
+    trail.add(System.currentTimeMillis(), (Thread.currentThread().getId() << 16) | event.ordinal(), argument);
+  }
+
+  /**
+   * Logs the recorded events of the given saga, oldest first.
+   */
+  public void dump(String id, String reason) {
+    log.warn("Audit trail of requestId = {} ({}):{}", id, reason, format(id));
+  }
+
+  /**
+   * Logs the recorded events of the given saga only the first time this is called for it, e.g. for a saga that a periodic
+   * sweep finds hanging on every run. A saga without a trail is not logged.
+   *
+   * @return true if the trail was logged
+   */
+  public boolean dumpOnce(String id, String reason) {
+    SagaTrail trail = trails.get(id);
+    if (trail == null || !trail.markDumped()) {
+      return false;
+    }
+    dump(id, reason);
+    return true;
+  }
+
+  /**
+   * Drops the trail of the given saga, the events recorded for it afterwards are ignored.
+   */
+  public void discard(String id) {
+    trails.remove(id);
+  }
+
+  /**
+   * @return the recorded events of the given saga as text, one line per event, oldest first
+   */
+  public String format(String id) {
+    SagaTrail trail = trails.get(id);
+    long[] records = trail != null ? trail.snapshot() : new long[0];
+    SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+    StringBuilder text = new StringBuilder();
+
+    for (int base = 0; base < records.length; base += RECORD_LONGS) {
+      long threadAndEvent = records[base + THREAD_AND_EVENT];
+      AuditEvent event = AuditEvent.fromCode((int) (threadAndEvent & 0xFFFF));
+      text.append(System.lineSeparator())
+          .append("  ").append(timeFormat.format(new Date(records[base + TIMESTAMP])))
+          .append(" [thread ").append(threadAndEvent >>> 16).append("] ")
+          .append(event);
+      appendArgument(text, event, records[base + ARGUMENT]);
+    }
+    if (records.length == 0) {
+      text.append(System.lineSeparator()).append("  no events recorded");
+    }
+    return text.toString();
+  }
+
+  /**
+   * @return number of sagas with a trail
+   */
+  public int size() {
+    return trails.size();
+  }
+
+  private static void appendArgument(StringBuilder text, AuditEvent event, long argument) {
+    if (event == null) {
+      return;
+    }
+    switch (event.getArgument()) {
+      case AMOUNT:
+        text.append(" amount = ").append(Double.longBitsToDouble(argument));
+        break;
+      case MILLIS:
+        text.append(" after = ").append(argument).append(" ms");
+        break;
+      case SUCCESS:
+        text.append(" success = ").append(argument != 0);
+        break;
+      case COMPENSATED:
+        text.append(" compensated = ").append(argument != 0);
+        break;
+      case TICKET_STATUS:
+        ITMS.Status[] statuses = ITMS.Status.values();
+        text.append(" status = ").append(argument >= 0 && argument < statuses.length ? statuses[(int) argument] : argument);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Ring of the records of a single saga. All access is guarded by the trail's monitor.
+   */
+  private static class SagaTrail {
+    private final long[] records;
+    private final int capacity;
+    // total number of records added, the next one goes to slot written % capacity
+    private long written;
+    private boolean dumped;
+
+    SagaTrail(int capacity) {
+      this.capacity = capacity;
+      this.records = new long[capacity * RECORD_LONGS];
+    }
+
+    synchronized void add(long timestamp, long threadAndEvent, long argument) {
+      int base = (int) (written % capacity) * RECORD_LONGS;
+      records[base + TIMESTAMP] = timestamp;
+      records[base + THREAD_AND_EVENT] = threadAndEvent;
+      records[base + ARGUMENT] = argument;
+      written++;
+    }
+
+    /**
+     * @return the records kept, oldest first
+     */
+    synchronized long[] snapshot() {
+      int count = (int) Math.min(written, capacity);
+      long[] copy = new long[count * RECORD_LONGS];
+      int oldest = (int) ((written - count) % capacity);
+      int head = (capacity - oldest) * RECORD_LONGS;
+      if (count < capacity) {
+        System.arraycopy(records, 0, copy, 0, copy.length);
+      } else {
+        System.arraycopy(records, oldest * RECORD_LONGS, copy, 0, head);
+        System.arraycopy(records, 0, copy, head, oldest * RECORD_LONGS);
+      }
+      return copy;
+    }
+
+    /**
+     * @return false if the trail had been marked before
+     */
+    synchronized boolean markDumped() {
+      boolean first = !dumped;
+      dumped = true;
+      return first;
+    }
+  }
+}
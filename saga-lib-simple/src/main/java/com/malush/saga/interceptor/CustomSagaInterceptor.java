@@ -13,6 +13,9 @@ import java.util.concurrent.ConcurrentMap;
 
 public class CustomSagaInterceptor implements SagaLifetimeInterceptor {
 
+  public static final String SAGA_COMPENSATED = "SAGA FAILED, TRANSACTION COMPENSATED";
+  public static final String SAGA_FINISHED = "SAGA FINISHED SUCCESSFULLY";
+
   private final Logger log = LoggerFactory.getLogger(CustomSagaInterceptor.class);
 
   private ConcurrentMap<String, String> sagaResultMap = new ConcurrentHashMap<>();
@@ -47,7 +50,7 @@ public class CustomSagaInterceptor implements SagaLifetimeInterceptor {
         .map(SellTicketState.class::cast)
         .ifPresent(sellTicketState -> {
           if(sellTicketState.isCompensationTriggered()) {
-            setSagaResult(sellTicketState.getRequestId(), "SAGA FAILED, TRANSACTION COMPENSATED");
+            setSagaResult(sellTicketState.getRequestId(), SAGA_COMPENSATED);
           }
         });
   }
@@ -58,7 +61,7 @@ public class CustomSagaInterceptor implements SagaLifetimeInterceptor {
     Optional.of(saga.state())
         .filter(SellTicketState.class::isInstance)
         .map(SellTicketState.class::cast)
-        .ifPresent(sellTicketState -> setSagaResult(sellTicketState.getRequestId(), "SAGA FINISHED SUCCESSFULLY"));
+        .ifPresent(sellTicketState -> setSagaResult(sellTicketState.getRequestId(), SAGA_FINISHED));
   }
 
   private synchronized void setSagaResult(String requestId, String message) {
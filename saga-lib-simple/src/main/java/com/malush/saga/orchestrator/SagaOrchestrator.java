@@ -0,0 +1,106 @@
+package com.malush.saga.orchestrator;
+
+import com.malush.saga.storage.CustomStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime hosting several saga types side by side, each one in its own bulkhead (see {@link SagaTypeRuntime}):
+ * a dedicated message stream, provider factory, storage partition and sized executor.
+ * <p>
+ * Saga types are registered first, then {@link #start()} creates the bulkheads and precomputes the routing table from
+ * message class to saga type. After that {@link #dispatch(Object)} is a single hash lookup on the exact message class
+ * followed by a hand-off to the executor of that saga type, so a slow or overloaded saga type cannot inflate the
+ * latency of the others.
+ * <p>
+ * Timeouts are not routed through here, every message stream fires the timeouts of its own sagas.
+ */
+public class SagaOrchestrator {
+
+  private final Logger log = LoggerFactory.getLogger(SagaOrchestrator.class);
+
+  private final Map<String, SagaTypeRegistration> registrations = new LinkedHashMap<>();
+  private final Map<String, SagaTypeRuntime> runtimes = new LinkedHashMap<>();
+  private volatile Map<Class<?>, SagaTypeRuntime> routes = Collections.emptyMap();
+  private boolean started;
+
+  public synchronized SagaOrchestrator register(SagaTypeRegistration registration) {
+    if (started) {
+      throw new IllegalStateException("Saga types must be registered before the orchestrator is started");
+    }
+    if (registration.getProviderFactory() == null) {
+      throw new IllegalArgumentException("No saga provider factory for " + registration.getTypeName());
+    }
+    if (registrations.putIfAbsent(registration.getTypeName(), registration) != null) {
+      throw new IllegalArgumentException("Saga type already registered: " + registration.getTypeName());
+    }
+    return this;
+  }
+
+  public synchronized void start() {
+    if (started) {
+      return;
+    }
+    Map<Class<?>, SagaTypeRuntime> table = new HashMap<>();
+    for (SagaTypeRegistration registration : registrations.values()) {
+      SagaTypeRuntime runtime = new SagaTypeRuntime(registration);
+      runtimes.put(registration.getTypeName(), runtime);
+      for (Class<?> messageClass : registration.getMessageClasses()) {
+        SagaTypeRuntime previous = table.putIfAbsent(messageClass, runtime);
+        if (previous != null) {
+          throw new IllegalStateException(messageClass.getName() + " is handled by both "
+              + previous.getTypeName() + " and " + registration.getTypeName());
+        }
+      }
+    }
+    routes = Collections.unmodifiableMap(table);
+    started = true;
+    log.info("Saga orchestrator started with saga types {}", runtimes.keySet());
+  }
+
+  /**
+   * Hands the message over to the executor of the saga type handling its class.
+   *
+   * @return false if no saga type handles the message or if the saga type is saturated and rejected it
+   */
+  public boolean dispatch(Object message) {
+    SagaTypeRuntime runtime = routes.get(message.getClass());
+    if (runtime == null) {
+      log.warn("No saga type registered for message {}", message.getClass().getName());
+      return false;
+    }
+    return runtime.submit(message);
+  }
+
+  /**
+   * @param typeName class name of the saga type
+   * @return storage partition of the given saga type, or null if the type is unknown or the orchestrator is not started
+   */
+  public synchronized CustomStorage getStorage(String typeName) {
+    SagaTypeRuntime runtime = runtimes.get(typeName);
+    return runtime != null ? runtime.getStorage() : null;
+  }
+
+  public synchronized List<SagaTypeMetrics> metrics() {
+    List<SagaTypeMetrics> metrics = new ArrayList<>(runtimes.size());
+    runtimes.values().forEach(runtime -> metrics.add(runtime.metrics()));
+    return metrics;
+  }
+
+  public void reportMetrics() {
+    metrics().forEach(metrics -> log.info("{}", metrics));
+  }
+
+  public synchronized void shutdown(long timeout, TimeUnit unit) {
+    runtimes.values().forEach(runtime -> runtime.shutdown(timeout, unit));
+    routes = Collections.emptyMap();
+  }
+}
@@ -0,0 +1,109 @@
+package com.malush.saga.orchestrator;
+
+import java.util.Locale;
+
+/**
+ * Point in time saturation snapshot of a single saga type bulkhead.
+ */
+public class SagaTypeMetrics {
+
+  private final String typeName;
+  private final int poolSize;
+  private final int activeThreads;
+  private final int queueDepth;
+  private final int queueCapacity;
+  private final int peakQueueDepth;
+  private final long submitted;
+  private final long rejected;
+  private final long completed;
+  private final long failed;
+  private final long avgQueueWaitNanos;
+  private final long maxQueueWaitNanos;
+  private final long avgHandleNanos;
+
+  SagaTypeMetrics(String typeName, int poolSize, int activeThreads, int queueDepth, int queueCapacity, int peakQueueDepth,
+                  long submitted, long rejected, long completed, long failed,
+                  long avgQueueWaitNanos, long maxQueueWaitNanos, long avgHandleNanos) {
+    this.typeName = typeName;
+    this.poolSize = poolSize;
+    this.activeThreads = activeThreads;
+    this.queueDepth = queueDepth;
+    this.queueCapacity = queueCapacity;
+    this.peakQueueDepth = peakQueueDepth;
+    this.submitted = submitted;
+    this.rejected = rejected;
+    this.completed = completed;
+    this.failed = failed;
+    this.avgQueueWaitNanos = avgQueueWaitNanos;
+    this.maxQueueWaitNanos = maxQueueWaitNanos;
+    this.avgHandleNanos = avgHandleNanos;
+  }
+
+  public String getTypeName() {
+    return typeName;
+  }
+
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  public int getActiveThreads() {
+    return activeThreads;
+  }
+
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public int getPeakQueueDepth() {
+    return peakQueueDepth;
+  }
+
+  public long getSubmitted() {
+    return submitted;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  public long getCompleted() {
+    return completed;
+  }
+
+  public long getFailed() {
+    return failed;
+  }
+
+  public long getAvgQueueWaitNanos() {
+    return avgQueueWaitNanos;
+  }
+
+  public long getMaxQueueWaitNanos() {
+    return maxQueueWaitNanos;
+  }
+
+  public long getAvgHandleNanos() {
+    return avgHandleNanos;
+  }
+
+  /**
+   * @return fraction of the queue in use, 1.0 means that new messages of this type are being rejected
+   */
+  public double getQueueUtilization() {
+    return queueCapacity == 0 ? 0 : (double) queueDepth / queueCapacity;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "%s: threads active/pool = %d/%d, queue = %d/%d (peak %d), submitted = %d, rejected = %d, completed = %d, failed = %d, " +
+            "queue wait avg/max = %.1f/%.1f us, handle avg = %.1f us",
+        typeName, activeThreads, poolSize, queueDepth, queueCapacity, peakQueueDepth, submitted, rejected, completed, failed,
+        avgQueueWaitNanos / 1e3, maxQueueWaitNanos / 1e3, avgHandleNanos / 1e3);
+  }
+}
@@ -0,0 +1,167 @@
+package com.malush.saga.orchestrator;
+
+import com.codebullets.sagalib.Saga;
+import com.codebullets.sagalib.SagaLifetimeInterceptor;
+import com.codebullets.sagalib.processing.SagaProviderFactory;
+import com.malush.saga.storage.CustomStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Everything the {@link SagaOrchestrator} needs to run one saga type in its own bulkhead: the saga class, the provider factory, the
+ * storage partition, the interceptors, the message and error listeners, the size of the executor and its queue, and the message
+ * classes that start or continue sagas of this type.
+ * <p>
+ * The message stream of the bulkhead only knows the registered saga class, it does not scan the classpath for sagas.
+ * The saga type name is the class name, which is also the type saga-lib stores in the saga states.
+ * <p>
+ * Created in the same fluent way as saga-lib's EventStreamBuilder, e.g.
+ * <pre>
+ *   SagaTypeRegistration.forSaga(SellTicketSaga.class)
+ *       .usingSagaProviderFactory(new SellTicketSagaProviderFactory())
+ *       .usingStorage(new CustomStorage())
+ *       .withThreads(2)
+ *       .handling(SellTicketRequest.class, ChargeRetailerReply.class)
+ * </pre>
+ */
+public class SagaTypeRegistration {
+
+  private static final int DEFAULT_THREADS = 2;
+  private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  private final Class<? extends Saga<?>> sagaClass;
+  private final String typeName;
+  private SagaProviderFactory providerFactory;
+  private CustomStorage storage;
+  private final List<SagaLifetimeInterceptor> interceptors = new ArrayList<>();
+  private Consumer<Object> messageListener = message -> {};
+  private BiConsumer<Object, Exception> errorListener = (message, e) -> {};
+  private final Set<Class<?>> messageClasses = new LinkedHashSet<>();
+  private int threads = DEFAULT_THREADS;
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+  private SagaTypeRegistration(Class<? extends Saga<?>> sagaClass) {
+    this.sagaClass = Objects.requireNonNull(sagaClass, "sagaClass");
+    this.typeName = sagaClass.getName();
+  }
+
+  public static SagaTypeRegistration forSaga(Class<? extends Saga<?>> sagaClass) {
+    return new SagaTypeRegistration(sagaClass);
+  }
+
+  public SagaTypeRegistration usingSagaProviderFactory(SagaProviderFactory providerFactory) {
+    this.providerFactory = providerFactory;
+    return this;
+  }
+
+  /**
+   * Storage partition used only by this saga type. If not set, a new {@link CustomStorage} is created.
+   */
+  public SagaTypeRegistration usingStorage(CustomStorage storage) {
+    this.storage = storage;
+    return this;
+  }
+
+  public SagaTypeRegistration callingInterceptor(SagaLifetimeInterceptor interceptor) {
+    interceptors.add(interceptor);
+    return this;
+  }
+
+  /**
+   * Called on the executor thread with every message of this saga type right before it is handed to the message stream,
+   * so messages are seen in the order the stream handles them. Rejected messages are never passed.
+   */
+  public SagaTypeRegistration beforeHandling(Consumer<Object> messageListener) {
+    this.messageListener = Objects.requireNonNull(messageListener, "messageListener");
+    return this;
+  }
+
+  /**
+   * Called on the executor thread with the message and the exception whenever handling a message of this saga type fails.
+   */
+  public SagaTypeRegistration onHandlerError(BiConsumer<Object, Exception> errorListener) {
+    this.errorListener = Objects.requireNonNull(errorListener, "errorListener");
+    return this;
+  }
+
+  public SagaTypeRegistration withThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("At least one thread is required, got " + threads);
+    }
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * Maximum number of messages waiting for a free thread. Messages above this limit are rejected instead of
+   * building up an unbounded backlog.
+   */
+  public SagaTypeRegistration withQueueCapacity(int queueCapacity) {
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("Queue capacity must be positive, got " + queueCapacity);
+    }
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  public SagaTypeRegistration handling(Class<?>... messageClasses) {
+    Collections.addAll(this.messageClasses, messageClasses);
+    return this;
+  }
+
+  String getTypeName() {
+    return typeName;
+  }
+
+  Class<? extends Saga<?>> getSagaClass() {
+    return sagaClass;
+  }
+
+  /**
+   * @return the saga classes hosted by the message stream of this saga type, in the form saga-lib's TypeScanner returns
+   */
+  @SuppressWarnings("rawtypes") // element type given by TypeScanner
+  Collection<Class<? extends Saga>> getSagaClasses() {
+    return Collections.<Class<? extends Saga>>singletonList(sagaClass);
+  }
+
+  SagaProviderFactory getProviderFactory() {
+    return providerFactory;
+  }
+
+  CustomStorage getStorage() {
+    return storage;
+  }
+
+  List<SagaLifetimeInterceptor> getInterceptors() {
+    return interceptors;
+  }
+
+  Consumer<Object> getMessageListener() {
+    return messageListener;
+  }
+
+  BiConsumer<Object, Exception> getErrorListener() {
+    return errorListener;
+  }
+
+  Set<Class<?>> getMessageClasses() {
+    return messageClasses;
+  }
+
+  int getThreads() {
+    return threads;
+  }
+
+  int getQueueCapacity() {
+    return queueCapacity;
+  }
+}
@@ -0,0 +1,172 @@
+package com.malush.saga.orchestrator;
+
+import com.codebullets.sagalib.MessageStream;
+import com.codebullets.sagalib.startup.EventStreamBuilder;
+import com.codebullets.sagalib.startup.StreamBuilder;
+import com.malush.saga.storage.CustomStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Bulkhead of a single saga type: its own message stream, storage partition and bounded executor.
+ * A backlog of this type fills only its own queue and is rejected once the queue is full, so it never takes threads
+ * away from the other saga types.
+ * <p>
+ * The runtime owns its storage: shutting it down closes the storage, which writes the saga state deltas still pending.
+ */
+class SagaTypeRuntime {
+
+  private final Logger log = LoggerFactory.getLogger(SagaTypeRuntime.class);
+
+  private final String typeName;
+  private final CustomStorage storage;
+  private final MessageStream stream;
+  private final ThreadPoolExecutor executor;
+  private final Consumer<Object> messageListener;
+  private final BiConsumer<Object, Exception> errorListener;
+
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder totalQueueWaitNanos = new LongAdder();
+  private final LongAdder totalHandleNanos = new LongAdder();
+  private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+  private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+  SagaTypeRuntime(SagaTypeRegistration registration) {
+    this.typeName = registration.getTypeName();
+    this.storage = registration.getStorage() != null ? registration.getStorage() : new CustomStorage();
+    this.messageListener = registration.getMessageListener();
+    this.errorListener = registration.getErrorListener();
+
+    StreamBuilder builder = EventStreamBuilder.configure()
+        .usingScanner(registration::getSagaClasses)
+        .usingStorage(storage)
+        .usingSagaProviderFactory(registration.getProviderFactory());
+    registration.getInterceptors().forEach(builder::callingInterceptor);
+    this.stream = builder.build();
+
+    this.executor = new ThreadPoolExecutor(
+        registration.getThreads(), registration.getThreads(),
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(registration.getQueueCapacity()),
+        new NamedThreadFactory(registration.getSagaClass().getSimpleName()),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  String getTypeName() {
+    return typeName;
+  }
+
+  CustomStorage getStorage() {
+    return storage;
+  }
+
+  /**
+   * @return false if the message was rejected because this saga type is saturated
+   */
+  boolean submit(Object message) {
+    long enqueuedAt = System.nanoTime();
+    try {
+      executor.execute(() -> handle(message, enqueuedAt));
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      log.warn("{} saturated, message rejected: {}", typeName, message.getClass().getSimpleName());
+      return false;
+    }
+    submitted.increment();
+    int depth = executor.getQueue().size();
+    peakQueueDepth.accumulateAndGet(depth, Math::max);
+    return true;
+  }
+
+  private void handle(Object message, long enqueuedAt) {
+    long start = System.nanoTime();
+    long queueWait = start - enqueuedAt;
+    totalQueueWaitNanos.add(queueWait);
+    maxQueueWaitNanos.accumulateAndGet(queueWait, Math::max);
+    try {
+      messageListener.accept(message);
+      stream.handle(message);
+      completed.increment();
+    } catch (Exception e) {
+      failed.increment();
+      log.error("{} message handling error", typeName, e);
+      notifyError(message, e);
+    } finally {
+      totalHandleNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  private void notifyError(Object message, Exception error) {
+    try {
+      errorListener.accept(message, error);
+    } catch (RuntimeException e) {
+      log.error("{} error listener failed", typeName, e);
+    }
+  }
+
+  SagaTypeMetrics metrics() {
+    long handled = completed.sum() + failed.sum();
+    return new SagaTypeMetrics(
+        typeName,
+        executor.getPoolSize(),
+        executor.getActiveCount(),
+        executor.getQueue().size(),
+        executor.getQueue().size() + executor.getQueue().remainingCapacity(),
+        peakQueueDepth.get(),
+        submitted.sum(),
+        rejected.sum(),
+        completed.sum(),
+        failed.sum(),
+        handled == 0 ? 0 : totalQueueWaitNanos.sum() / handled,
+        maxQueueWaitNanos.get(),
+        handled == 0 ? 0 : totalHandleNanos.sum() / handled);
+  }
+
+  void shutdown(long timeout, TimeUnit unit) {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(timeout, unit)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    try {
+      stream.close();
+    } catch (Exception e) {
+      log.error("{} unable to close message stream", typeName, e);
+    }
+    storage.close();
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private NamedThreadFactory(String name) {
+      this.prefix = name + "-";
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.malush.saga.replay;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a single trace replay: throughput, handler latency distribution and how the replayed run diverged
+ * from the recording (timeouts, errors). The values are meant to be compared between runs of different builds.
+ */
+public class ReplayReport {
+
+  private final long messages;
+  private final long errors;
+  private final long recordedTimeouts;
+  private final long replayedTimeouts;
+  private final long elapsedNanos;
+  private final long[] sortedLatencies;
+
+  ReplayReport(long messages, long errors, long recordedTimeouts, long replayedTimeouts, long elapsedNanos, long[] latencies, int latencyCount) {
+    this.messages = messages;
+    this.errors = errors;
+    this.recordedTimeouts = recordedTimeouts;
+    this.replayedTimeouts = replayedTimeouts;
+    this.elapsedNanos = elapsedNanos;
+    this.sortedLatencies = Arrays.copyOf(latencies, latencyCount);
+    Arrays.sort(this.sortedLatencies);
+  }
+
+  public long getMessages() {
+    return messages;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  public long getRecordedTimeouts() {
+    return recordedTimeouts;
+  }
+
+  public long getReplayedTimeouts() {
+    return replayedTimeouts;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public double getThroughputPerSecond() {
+    return elapsedNanos == 0 ? 0 : messages * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * @param percentile value between 0 and 100
+   * @return handler latency in nanoseconds at the given percentile
+   */
+  public long getLatencyPercentile(double percentile) {
+    if (sortedLatencies.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+    return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "messages = %d, errors = %d, timeouts recorded/replayed = %d/%d, elapsed = %.1f ms, throughput = %.0f msg/s, " +
+            "latency p50 = %.1f us, p99 = %.1f us, max = %.1f us",
+        messages, errors, recordedTimeouts, replayedTimeouts, elapsedNanos / 1e6, getThroughputPerSecond(),
+        getLatencyPercentile(50) / 1e3, getLatencyPercentile(99) / 1e3, getLatencyPercentile(100) / 1e3);
+  }
+}
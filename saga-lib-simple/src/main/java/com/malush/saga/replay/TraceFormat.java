@@ -0,0 +1,95 @@
+package com.malush.saga.replay;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Binary layout of a saga message trace.
+ * <p>
+ * A trace starts with a header (magic number and format version) followed by a sequence of records.
+ * Every record is:
+ * 1. one byte with the record type,
+ * 2. a variable length number of nanoseconds elapsed since the previous record,
+ * 3. the type specific payload.
+ * <p>
+ * Request ids are random UUIDs in practice, so an id is written as two longs whenever it is a canonical UUID and falls back
+ * to a UTF string otherwise.
+ */
+final class TraceFormat {
+
+  static final int MAGIC = 0x53475452; // "SGTR"
+  static final byte VERSION = 1;
+
+  static final byte SELL_TICKET_REQUEST = 1;
+  static final byte CHARGE_RETAILER_REPLY = 2;
+  static final byte COMPENSATE_RETAILER_REPLY = 3;
+  static final byte COMPENSATE_TICKET_REQUEST = 4;
+  static final byte TIMEOUT = 5;
+
+  private static final byte ID_UUID = 0;
+  private static final byte ID_STRING = 1;
+
+  private TraceFormat() {
+  }
+
+  static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (shift > 63) {
+        throw new IOException("Malformed variable length number in trace");
+      }
+      b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  static void writeId(DataOutput out, String id) throws IOException {
+    UUID uuid = parseUuid(id);
+    if (uuid != null) {
+      out.writeByte(ID_UUID);
+      out.writeLong(uuid.getMostSignificantBits());
+      out.writeLong(uuid.getLeastSignificantBits());
+    } else {
+      out.writeByte(ID_STRING);
+      out.writeUTF(id);
+    }
+  }
+
+  static String readId(DataInput in) throws IOException {
+    byte kind = in.readByte();
+    if (kind == ID_UUID) {
+      return new UUID(in.readLong(), in.readLong()).toString();
+    }
+    if (kind == ID_STRING) {
+      return in.readUTF();
+    }
+    throw new IOException("Unknown id encoding in trace: " + kind);
+  }
+
+  private static UUID parseUuid(String id) {
+    if (id.length() != 36) {
+      return null;
+    }
+    try {
+      UUID uuid = UUID.fromString(id);
+      // only use the compact form if it round-trips to exactly the same string
+      return uuid.toString().equals(id) ? uuid : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.malush.saga.replay;
+
+import com.malush.saga.workflow.buy.CompensateTicketRequest;
+import com.malush.saga.workflow.buy.SellTicketRequest;
+import com.malush.saga.workflow.participants.rms.reply.ChargeRetailerReply;
+import com.malush.saga.workflow.participants.rms.reply.CompensateRetailerReply;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads back a trace written by {@link TraceRecorder}, one record at a time, recreating the original messages.
+ */
+public class TraceReader implements AutoCloseable {
+
+  private final DataInputStream in;
+  private long timestamp;
+
+  public TraceReader(InputStream in) throws IOException {
+    this.in = new DataInputStream(in);
+    if (this.in.readInt() != TraceFormat.MAGIC) {
+      throw new IOException("Not a saga trace file");
+    }
+    byte version = this.in.readByte();
+    if (version != TraceFormat.VERSION) {
+      throw new IOException("Unsupported saga trace version: " + version);
+    }
+  }
+
+  public static TraceReader fromFile(String path) throws IOException {
+    return new TraceReader(new BufferedInputStream(new FileInputStream(path), 64 * 1024));
+  }
+
+  /**
+   * @return the next record or null when the end of the trace is reached
+   */
+  public Entry next() throws IOException {
+    int type = in.read();
+    if (type < 0) {
+      return null;
+    }
+    try {
+      timestamp += TraceFormat.readVarLong(in);
+      String id = TraceFormat.readId(in);
+      if (type == TraceFormat.TIMEOUT) {
+        return new Entry(timestamp, id, null);
+      }
+      String retailerId = in.readUTF();
+      double amount = in.readDouble();
+      switch (type) {
+        case TraceFormat.SELL_TICKET_REQUEST:
+          return new Entry(timestamp, id, new SellTicketRequest(id, retailerId, amount));
+        case TraceFormat.COMPENSATE_TICKET_REQUEST:
+          return new Entry(timestamp, id, new CompensateTicketRequest(id, amount, retailerId));
+        case TraceFormat.CHARGE_RETAILER_REPLY:
+          return new Entry(timestamp, id, new ChargeRetailerReply(in.readBoolean(), id, amount, retailerId));
+        case TraceFormat.COMPENSATE_RETAILER_REPLY:
+          return new Entry(timestamp, id, new CompensateRetailerReply(in.readBoolean(), id, amount, retailerId));
+        default:
+          throw new IOException("Unknown trace record type: " + type);
+      }
+    } catch (EOFException e) {
+      throw new IOException("Truncated trace record", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * A single recorded message. Timeout records carry no message, only the id of the saga that timed out,
+   * as the timeout itself is re-created by the saga during the replay.
+   */
+  public static class Entry {
+    public final long timestampNanos;
+    public final String id;
+    public final Object message;
+
+    private Entry(long timestampNanos, String id, Object message) {
+      this.timestampNanos = timestampNanos;
+      this.id = id;
+      this.message = message;
+    }
+
+    public boolean isTimeout() {
+      return message == null;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package com.malush.saga.replay;
+
+import com.codebullets.sagalib.ExecutionContext;
+import com.codebullets.sagalib.Saga;
+import com.codebullets.sagalib.SagaLifetimeInterceptor;
+import com.codebullets.sagalib.timeout.Timeout;
+import com.malush.saga.workflow.buy.CompensateTicketRequest;
+import com.malush.saga.workflow.buy.SellTicketRequest;
+import com.malush.saga.workflow.participants.rms.reply.ChargeRetailerReply;
+import com.malush.saga.workflow.participants.rms.reply.CompensateRetailerReply;
+import com.malush.saga.workflow.participants.rms.reply.RMSReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records every message fed into the saga message stream into a compact binary trace file (see {@link TraceFormat}),
+ * so that the exact same message sequence can later be fed into a fresh stream by the {@link TraceReplayer}.
+ * <p>
+ * Messages coming from outside (REST requests, RMS replies, scheduler compensation requests) are recorded by calling
+ * {@link #record(Object)} on the executor thread of their saga type, right before the message is handed to the stream,
+ * so the trace follows the order in which the stream handles them. Timeouts are fired by saga-lib itself and never
+ * pass through our code, therefore the recorder is also registered as an interceptor and records the timeout the moment
+ * its handler is about to be executed.
+ * <p>
+ * Recording is switched on by starting the application with -Dsaga.trace=/path/to/file.trace.
+ * Without it the recorder is disabled and all calls are no-ops.
+ */
+public class TraceRecorder implements SagaLifetimeInterceptor, AutoCloseable {
+
+  public static final String TRACE_FILE_PROPERTY = "saga.trace";
+
+  private final Logger log = LoggerFactory.getLogger(TraceRecorder.class);
+
+  private final DataOutputStream out;
+  private long lastTimestamp;
+  private long recordCount;
+  private boolean closed;
+
+  private TraceRecorder(DataOutputStream out) {
+    this.out = out;
+    this.lastTimestamp = System.nanoTime();
+  }
+
+  public static TraceRecorder disabled() {
+    return new TraceRecorder(null);
+  }
+
+  public static TraceRecorder toFile(String path) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 64 * 1024));
+    out.writeInt(TraceFormat.MAGIC);
+    out.writeByte(TraceFormat.VERSION);
+    return new TraceRecorder(out);
+  }
+
+  /**
+   * Creates a recorder writing to the file given by the saga.trace system property, or a disabled recorder if the
+   * property is not set or the file cannot be created.
+   */
+  public static TraceRecorder fromSystemProperty() {
+    String path = System.getProperty(TRACE_FILE_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return disabled();
+    }
+    try {
+      return toFile(path);
+    } catch (IOException e) {
+      LoggerFactory.getLogger(TraceRecorder.class).error("Unable to create trace file {}, recording disabled", path, e);
+      return disabled();
+    }
+  }
+
+  public boolean isEnabled() {
+    return out != null;
+  }
+
+  public void record(Object message) {
+    if (out == null) {
+      return;
+    }
+    if (message instanceof SellTicketRequest) {
+      SellTicketRequest request = (SellTicketRequest) message;
+      write(TraceFormat.SELL_TICKET_REQUEST, request.requestId, request.retailerId, request.amount, false);
+    } else if (message instanceof ChargeRetailerReply) {
+      RMSReply reply = (RMSReply) message;
+      write(TraceFormat.CHARGE_RETAILER_REPLY, reply.requestId, reply.retailerId, reply.amount, reply.success);
+    } else if (message instanceof CompensateRetailerReply) {
+      RMSReply reply = (RMSReply) message;
+      write(TraceFormat.COMPENSATE_RETAILER_REPLY, reply.requestId, reply.retailerId, reply.amount, reply.success);
+    } else if (message instanceof CompensateTicketRequest) {
+      CompensateTicketRequest request = (CompensateTicketRequest) message;
+      write(TraceFormat.COMPENSATE_TICKET_REQUEST, request.requestId, request.retailerId, request.amount, false);
+    } else if (message instanceof Timeout) {
+      write(TraceFormat.TIMEOUT, ((Timeout) message).getSagaId(), null, 0, false);
+    }
+  }
+
+  @Override
+  public void onStarting(Saga<?> saga, ExecutionContext context, Object message) {}
+
+  @Override
+  public void onHandlerExecuting(Saga<?> saga, ExecutionContext context, Object message) {
+    if (message instanceof Timeout) {
+      record(message);
+    }
+  }
+
+  @Override
+  public void onHandlerExecuted(Saga<?> saga, ExecutionContext context, Object message) {}
+
+  @Override
+  public void onFinished(Saga<?> saga, ExecutionContext context) {}
+
+  /**
+   * The timestamp is taken inside the lock so that the deltas written to the file are never negative,
+   * even though messages are recorded concurrently by several threads.
+   */
+  private synchronized void write(byte type, String id, String retailerId, double amount, boolean success) {
+    if (closed) {
+      return;
+    }
+    try {
+      long now = System.nanoTime();
+      out.writeByte(type);
+      TraceFormat.writeVarLong(out, Math.max(0, now - lastTimestamp));
+      lastTimestamp = now;
+      TraceFormat.writeId(out, id);
+      if (type != TraceFormat.TIMEOUT) {
+        out.writeUTF(retailerId);
+        out.writeDouble(amount);
+      }
+      if (type == TraceFormat.CHARGE_RETAILER_REPLY || type == TraceFormat.COMPENSATE_RETAILER_REPLY) {
+        out.writeBoolean(success);
+      }
+      recordCount++;
+    } catch (IOException e) {
+      log.error("Unable to write trace record", e);
+    }
+  }
+
+  /**
+   * Closes the trace file. The message stream closes its interceptors as well, so this may be called more than once;
+   * only the first call has an effect and timeouts firing afterwards are not recorded.
+   */
+  @Override
+  public synchronized void close() {
+    if (out == null || closed) {
+      return;
+    }
+    closed = true;
+    try {
+      out.close();
+      log.info("Trace recording finished: {} records", recordCount);
+    } catch (IOException e) {
+      log.error("Unable to close trace file", e);
+    }
+  }
+}
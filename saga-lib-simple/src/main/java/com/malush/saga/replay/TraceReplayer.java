@@ -0,0 +1,156 @@
+package com.malush.saga.replay;
+
+import com.codebullets.sagalib.ExecutionContext;
+import com.codebullets.sagalib.MessageStream;
+import com.codebullets.sagalib.Saga;
+import com.codebullets.sagalib.SagaLifetimeInterceptor;
+import com.codebullets.sagalib.startup.EventStreamBuilder;
+import com.codebullets.sagalib.timeout.InMemoryTimeoutManager;
+import com.codebullets.sagalib.timeout.Timeout;
+import com.malush.saga.storage.CustomStorage;
+import com.malush.saga.workflow.buy.SellTicketSaga;
+import com.malush.saga.workflow.buy.SellTicketSagaProviderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds a trace recorded by {@link TraceRecorder} into a fresh message stream backed by a fresh {@link CustomStorage},
+ * so that a production message sequence can be re-run deterministically and the runs compared across builds.
+ * <p>
+ * Messages are handled one after another on the calling thread, either at the original pace (waiting for the recorded
+ * gap between two messages) or at maximum speed. Saga timeouts are driven by a {@link VirtualTimeScheduler}: before
+ * each message is handled the virtual time is moved to the recorded timestamp of that message, which fires all timeouts
+ * that were due at that point of the recording. Fired timeouts are handled inline on the calling thread as well, so they
+ * are ordered with the messages and none of them is lost when the stream is closed. Recorded timeout records are
+ * therefore not re-sent, they only serve to compare how many timeouts fired in the recording and in the replay.
+ * <p>
+ * Usage: TraceReplayer &lt;trace file&gt; [original|max]
+ */
+public class TraceReplayer {
+
+  private static Logger log = LoggerFactory.getLogger(TraceReplayer.class);
+
+  public enum Pace {
+    ORIGINAL,
+    MAX_SPEED
+  }
+
+  private final Pace pace;
+
+  public TraceReplayer(Pace pace) {
+    this.pace = pace;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      log.error("Usage: TraceReplayer <trace file> [original|max]");
+      return;
+    }
+    Pace pace = args.length > 1 && "original".equalsIgnoreCase(args[1]) ? Pace.ORIGINAL : Pace.MAX_SPEED;
+    try (TraceReader reader = TraceReader.fromFile(args[0])) {
+      ReplayReport report = new TraceReplayer(pace).replay(reader);
+      log.info("Replay of {} at {} pace: {}", args[0], pace, report);
+    }
+  }
+
+  public ReplayReport replay(TraceReader reader) throws IOException {
+    VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    TimeoutCounter timeoutCounter = new TimeoutCounter();
+    CustomStorage storage = new CustomStorage();
+    MessageStream stream = EventStreamBuilder.configure()
+        .usingScanner(() -> Collections.singletonList(SellTicketSaga.class))
+        .usingStorage(storage)
+        .usingSagaProviderFactory(new SellTicketSagaProviderFactory())
+        .usingTimeoutManager(new InMemoryTimeoutManager(scheduler, scheduler))
+        .callingInterceptor(timeoutCounter)
+        .usingExecutor(Runnable::run)
+        .build();
+
+    long[] latencies = new long[1024];
+    int messages = 0;
+    long errors = 0;
+    long recordedTimeouts = 0;
+    long firstTimestamp = -1;
+    long start = System.nanoTime();
+    try {
+      TraceReader.Entry entry;
+      while ((entry = reader.next()) != null) {
+        if (firstTimestamp < 0) {
+          firstTimestamp = entry.timestampNanos;
+        }
+        long offset = entry.timestampNanos - firstTimestamp;
+        if (pace == Pace.ORIGINAL) {
+          waitUntil(start + offset);
+        }
+        scheduler.advanceTo(offset);
+        if (entry.isTimeout()) {
+          recordedTimeouts++;
+          continue;
+        }
+
+        long handleStart = System.nanoTime();
+        try {
+          stream.handle(entry.message);
+        } catch (Exception e) {
+          errors++;
+          log.error("Message handling error during replay, id = {}", entry.id, e);
+        }
+        if (messages == latencies.length) {
+          latencies = Arrays.copyOf(latencies, messages * 2);
+        }
+        latencies[messages++] = System.nanoTime() - handleStart;
+      }
+      // let the sagas that are still waiting for a reply time out, as they did in the recording
+      scheduler.advanceUntilIdle();
+    } finally {
+      try {
+        stream.close();
+      } catch (Exception e) {
+        throw new IOException("Unable to close the message stream", e);
+      } finally {
+        storage.close();
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    return new ReplayReport(messages, errors, recordedTimeouts, timeoutCounter.count.get(), elapsed, latencies, messages);
+  }
+
+  private static void waitUntil(long deadlineNanos) {
+    long remaining;
+    while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static class TimeoutCounter implements SagaLifetimeInterceptor {
+    private final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void onStarting(Saga<?> saga, ExecutionContext context, Object message) {}
+
+    @Override
+    public void onHandlerExecuting(Saga<?> saga, ExecutionContext context, Object message) {
+      if (message instanceof Timeout) {
+        count.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void onHandlerExecuted(Saga<?> saga, ExecutionContext context, Object message) {}
+
+    @Override
+    public void onFinished(Saga<?> saga, ExecutionContext context) {}
+  }
+}
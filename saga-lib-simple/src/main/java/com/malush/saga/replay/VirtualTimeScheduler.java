@@ -0,0 +1,244 @@
+package com.malush.saga.replay;
+
+import com.codebullets.sagalib.timeout.Clock;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler and clock driven by virtual time instead of the wall clock.
+ * <p>
+ * It is handed to saga-lib's in-memory timeout manager during a replay. Timeouts requested by the sagas are queued
+ * here and only fire when the replayer moves the virtual time past their deadline via {@link #advanceTo(long)}.
+ * This way a timeout fires at the same position within the message sequence as it did in the recording,
+ * no matter if the trace is replayed at original pace or at maximum speed.
+ * <p>
+ * Periodic tasks run once per period of virtual time that is passed, a task with a fixed delay is rescheduled
+ * relative to the virtual time it ran at. As virtual time does not pass between two runs, both behave the same.
+ */
+public class VirtualTimeScheduler extends AbstractExecutorService implements ScheduledExecutorService, Clock {
+
+  private final long epochMillis;
+  private final PriorityQueue<VirtualTask<?>> queue = new PriorityQueue<>();
+  private long nowNanos;
+  private long sequence;
+  private boolean shutdown;
+
+  public VirtualTimeScheduler() {
+    this.epochMillis = System.currentTimeMillis();
+  }
+
+  @Override
+  public Date now() {
+    return new Date(epochMillis + TimeUnit.NANOSECONDS.toMillis(currentNanos()));
+  }
+
+  public synchronized long currentNanos() {
+    return nowNanos;
+  }
+
+  /**
+   * Moves the virtual time forward, running every task whose deadline has been reached on the calling thread.
+   *
+   * @return number of tasks that were run
+   */
+  public int advanceTo(long targetNanos) {
+    int fired = runDue(targetNanos);
+    synchronized (this) {
+      nowNanos = Math.max(nowNanos, targetNanos);
+    }
+    return fired;
+  }
+
+  /**
+   * Runs every pending one-shot task, including the ones scheduled by the tasks being run. Periodic tasks never leave
+   * the queue, so they only run as long as one-shot tasks are pending and stay scheduled afterwards.
+   *
+   * @return number of tasks that were run
+   */
+  public int advanceUntilIdle() {
+    int fired = 0;
+    long lastDeadline;
+    while ((lastDeadline = lastOneShotDeadline()) >= 0) {
+      fired += advanceTo(lastDeadline);
+    }
+    return fired;
+  }
+
+  /**
+   * @return the latest deadline of all pending one-shot tasks or -1 if there are none
+   */
+  private synchronized long lastOneShotDeadline() {
+    long last = -1;
+    for (VirtualTask<?> task : queue) {
+      if (!task.isPeriodic()) {
+        last = Math.max(last, task.deadlineNanos);
+      }
+    }
+    return last;
+  }
+
+  private int runDue(long targetNanos) {
+    int fired = 0;
+    VirtualTask<?> task;
+    while ((task = pollDue(targetNanos)) != null) {
+      task.run();
+      fired++;
+    }
+    return fired;
+  }
+
+  private synchronized VirtualTask<?> pollDue(long targetNanos) {
+    VirtualTask<?> head = queue.peek();
+    if (head == null || head.deadlineNanos > targetNanos) {
+      return null;
+    }
+    nowNanos = Math.max(nowNanos, head.deadlineNanos);
+    return queue.poll();
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return enqueue(new VirtualTask<>(Executors.callable(command, null), unit.toNanos(delay), 0));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return enqueue(new VirtualTask<>(callable, unit.toNanos(delay), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be positive");
+    }
+    return enqueue(new VirtualTask<>(Executors.callable(command, null), unit.toNanos(initialDelay), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException("delay must be positive");
+    }
+    return enqueue(new VirtualTask<>(Executors.callable(command, null), unit.toNanos(initialDelay), -unit.toNanos(delay)));
+  }
+
+  private synchronized <V> VirtualTask<V> enqueue(VirtualTask<V> task) {
+    if (!shutdown) {
+      queue.add(task);
+    }
+    return task;
+  }
+
+  /**
+   * Tasks without a delay are not time dependent and run immediately on the calling thread.
+   */
+  @Override
+  public void execute(Runnable command) {
+    command.run();
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    shutdown = true;
+  }
+
+  @Override
+  public synchronized List<Runnable> shutdownNow() {
+    shutdown = true;
+    List<Runnable> pending = new ArrayList<>(queue);
+    queue.clear();
+    return pending;
+  }
+
+  @Override
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public synchronized boolean isTerminated() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return isTerminated();
+  }
+
+  public synchronized int pendingTasks() {
+    return queue.size();
+  }
+
+  private class VirtualTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+    // only changed while the task is out of the queue
+    private long deadlineNanos;
+    private long seq;
+    // 0 for one-shot tasks, positive for a fixed rate, negative for a fixed delay
+    private final long periodNanos;
+
+    VirtualTask(Callable<V> callable, long delayNanos, long periodNanos) {
+      super(callable);
+      this.periodNanos = periodNanos;
+      synchronized (VirtualTimeScheduler.this) {
+        this.deadlineNanos = nowNanos + Math.max(0, delayNanos);
+        this.seq = sequence++;
+      }
+    }
+
+    boolean isPeriodic() {
+      return periodNanos != 0;
+    }
+
+    @Override
+    public void run() {
+      if (!isPeriodic()) {
+        super.run();
+        return;
+      }
+      if (runAndReset()) {
+        synchronized (VirtualTimeScheduler.this) {
+          deadlineNanos = periodNanos > 0 ? deadlineNanos + periodNanos : nowNanos - periodNanos;
+          seq = sequence++;
+        }
+        enqueue(this);
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        synchronized (VirtualTimeScheduler.this) {
+          queue.remove(this);
+        }
+      }
+      return cancelled;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadlineNanos - currentNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      if (other instanceof VirtualTask) {
+        VirtualTask<?> task = (VirtualTask<?>) other;
+        int byDeadline = Long.compare(deadlineNanos, task.deadlineNanos);
+        return byDeadline != 0 ? byDeadline : Long.compare(seq, task.seq);
+      }
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+}
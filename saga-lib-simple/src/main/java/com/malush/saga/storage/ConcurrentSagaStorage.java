@@ -0,0 +1,196 @@
+package com.malush.saga.storage;
+
+import com.codebullets.sagalib.SagaState;
+import com.codebullets.sagalib.storage.InstanceKeySearchParam;
+import com.codebullets.sagalib.storage.StateStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory saga state storage built for many threads accessing it at the same time.
+ * <p>
+ * States are kept in a concurrent sagaId -> state map, so loading by saga id never blocks. The (type, instanceKey) -> sagaIds
+ * index is a concurrent map as well, its entries are only changed through atomic per key compute operations.
+ * Writes of the same saga (save, delete) are serialized by a lock stripe chosen by the saga id, which keeps the state map
+ * and the index consistent for that saga while writes of other sagas go on in parallel.
+ */
+public class ConcurrentSagaStorage implements StateStorage {
+
+  private static final int LOCK_STRIPES = 64;
+
+  private final ConcurrentMap<String, SagaState<?>> states = new ConcurrentHashMap<>();
+  private final ConcurrentMap<InstanceKey, Set<String>> index = new ConcurrentHashMap<>();
+  // sagaId -> instance keys under which the saga is currently indexed, to remove stale index entries
+  private final ConcurrentMap<String, InstanceKey[]> indexedKeys = new ConcurrentHashMap<>();
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  public ConcurrentSagaStorage() {
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes") // parameter type given by StateStorage
+  public void save(SagaState state) {
+    String sagaId = state.getSagaId();
+    InstanceKey[] keys = instanceKeysOf(state);
+    synchronized (lockFor(sagaId)) {
+      states.put(sagaId, state);
+      InstanceKey[] previous = indexedKeys.put(sagaId, keys);
+      if (previous != null) {
+        for (InstanceKey key : previous) {
+          if (!contains(keys, key)) {
+            unindex(key, sagaId);
+          }
+        }
+      }
+      for (InstanceKey key : keys) {
+        if (previous == null || !contains(previous, key)) {
+          index.compute(key, (k, sagaIds) -> {
+            Set<String> ids = sagaIds != null ? sagaIds : ConcurrentHashMap.newKeySet();
+            ids.add(sagaId);
+            return ids;
+          });
+        }
+      }
+    }
+  }
+
+  @Override
+  public SagaState<?> load(String sagaId) {
+    return states.get(sagaId);
+  }
+
+  @Override
+  public void delete(String sagaId) {
+    synchronized (lockFor(sagaId)) {
+      states.remove(sagaId);
+      InstanceKey[] keys = indexedKeys.remove(sagaId);
+      if (keys != null) {
+        for (InstanceKey key : keys) {
+          unindex(key, sagaId);
+        }
+      }
+    }
+  }
+
+  @Override
+  public Collection<? extends SagaState<?>> load(String type, Object instanceKey) {
+    Set<String> sagaIds = index.get(new InstanceKey(type, instanceKey));
+    if (sagaIds == null) {
+      return Collections.emptyList();
+    }
+    List<SagaState<?>> result = new ArrayList<>(sagaIds.size());
+    addStates(sagaIds, result, null);
+    return result;
+  }
+
+  /**
+   * Looks up all search params into a single result list. A saga matching more than one of the params is returned once.
+   */
+  @Override
+  public Stream<? extends SagaState<?>> loadAll(Iterable<InstanceKeySearchParam> searchParams) {
+    List<SagaState<?>> result = new ArrayList<>();
+    Set<String> seen = null;
+    int lookups = 0;
+    for (InstanceKeySearchParam param : searchParams) {
+      Set<String> sagaIds = index.get(new InstanceKey(param.getSagaTypeName(), param.getInstanceKey()));
+      if (sagaIds == null) {
+        continue;
+      }
+      if (++lookups == 2) {
+        // duplicates are only possible from the second matching param on
+        seen = new HashSet<>();
+        for (SagaState<?> state : result) {
+          seen.add(state.getSagaId());
+        }
+      }
+      addStates(sagaIds, result, seen);
+    }
+    return result.stream();
+  }
+
+  private void addStates(Set<String> sagaIds, List<SagaState<?>> result, Set<String> seen) {
+    for (String sagaId : sagaIds) {
+      if (seen != null && !seen.add(sagaId)) {
+        continue;
+      }
+      SagaState<?> state = states.get(sagaId);
+      // the saga may have been deleted after the index was read
+      if (state != null) {
+        result.add(state);
+      }
+    }
+  }
+
+  private void unindex(InstanceKey key, String sagaId) {
+    index.computeIfPresent(key, (k, sagaIds) -> {
+      sagaIds.remove(sagaId);
+      return sagaIds.isEmpty() ? null : sagaIds;
+    });
+  }
+
+  private Object lockFor(String sagaId) {
+    int hash = sagaId.hashCode();
+    return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+  }
+
+  private static InstanceKey[] instanceKeysOf(SagaState<?> state) {
+    Set<?> keys = state.instanceKeys();
+    InstanceKey[] result = new InstanceKey[keys.size()];
+    int i = 0;
+    for (Object key : keys) {
+      result[i++] = new InstanceKey(state.getType(), key);
+    }
+    return result;
+  }
+
+  private static boolean contains(InstanceKey[] keys, InstanceKey key) {
+    for (InstanceKey candidate : keys) {
+      if (candidate.equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class InstanceKey {
+    private final String type;
+    private final Object key;
+    private final int hash;
+
+    private InstanceKey(String type, Object key) {
+      this.type = type;
+      this.key = key;
+      this.hash = 31 * (type != null ? type.hashCode() : 0) + (key != null ? key.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof InstanceKey)) {
+        return false;
+      }
+      InstanceKey that = (InstanceKey) other;
+      return hash == that.hash
+          && (type != null ? type.equals(that.type) : that.type == null)
+          && (key != null ? key.equals(that.key) : that.key == null);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
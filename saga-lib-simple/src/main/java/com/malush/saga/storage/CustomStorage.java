@@ -2,7 +2,6 @@ package com.malush.saga.storage;
 
 import com.codebullets.sagalib.SagaState;
 import com.codebullets.sagalib.storage.InstanceKeySearchParam;
-import com.codebullets.sagalib.storage.MemoryStorage;
 import com.malush.saga.workflow.buy.SellTicketState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,31 +12,65 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 /**
- * Extension of Memory Storage that uses the "real" DB to insert and soft delete states for recovery purposes in case of
+ * Extension of the in-memory {@link ConcurrentSagaStorage} that uses the "real" DB to insert and soft delete states for recovery purposes in case of
  * a system crash. For other operations such as update and get we should use the faster memory storage and limit the number
  * of DB calls for a single Saga. There should be only 2 calls: Insert the state, and soft delete the state. In case of a
  * crash we should:
  * 1. read all states from a DB,
  * 2. see if these exist in memory as well
+ * <p>
+ * The state is inserted once as a snapshot. Later changes are not written as a full state on every save: the fields a
+ * handler has changed (see {@link SellTicketState#getDirtyFields()}) are captured as a field delta while the state is
+ * saved, on the thread that changed it. The deltas of several handler executions of the same saga are coalesced, the
+ * latest value of a field wins, and written as one compact delta when the pending deltas are flushed.
+ * A background thread flushes every {@link #FLUSH_INTERVAL_MILLIS} ms, and a save flushes right away once
+ * {@link #MAX_PENDING_DELTAS} sagas have pending deltas, so a change never stays out of the DB for long. The DB is also
+ * flushed before it is read and when the storage is closed.
+ * Once a saga has collected {@link #COMPACTION_THRESHOLD} deltas they are folded into its snapshot,
+ * {@link #compactDB()} does the same for all sagas.
  */
-public class CustomStorage extends MemoryStorage {
+public class CustomStorage extends ConcurrentSagaStorage implements AutoCloseable {
 
   private final Logger log = LoggerFactory.getLogger(CustomStorage.class);
 
-  private ConcurrentMap<String, SellTicketState> mockDBStorage = new ConcurrentHashMap<>();
+  static final int COMPACTION_THRESHOLD = 8;
+  static final long FLUSH_INTERVAL_MILLIS = 200;
+  static final int MAX_PENDING_DELTAS = 1024;
+
+  private ConcurrentMap<String, DBRecord> mockDBStorage = new ConcurrentHashMap<>();
+
+  // requestId -> changes captured since the last write to the DB
+  private ConcurrentMap<String, SellTicketStateDelta> pendingDeltas = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "CustomStorage-flush");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  public CustomStorage() {
+    flushScheduler.scheduleWithFixedDelay(this::scheduledFlush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
 
   @Override
+  @SuppressWarnings("rawtypes") // parameter type given by StateStorage
   public void save(SagaState state) {
     log.debug("Saving saga state: sagaId = {}", state.getSagaId());
-    saveInDB(state);
+    //memory first: a saga found in the DB but not in memory is then always one lost in a crash, never one just starting
     super.save(state);
+    saveInDB(state);
   }
 
   @Override
-  public SagaState load(String sagaId) {
+  public SagaState<?> load(String sagaId) {
     log.debug("Loading saga state: sagaId = {}", sagaId);
     return super.load(sagaId);
   }
@@ -50,44 +83,140 @@ public class CustomStorage extends MemoryStorage {
   }
 
   @Override
-  public Collection<? extends SagaState> load(String type, Object instanceKey) {
+  public Collection<? extends SagaState<?>> load(String type, Object instanceKey) {
     log.debug("Loading saga state for type = {} and instanceKey = {}", type, instanceKey);
     return super.load(type, instanceKey);
   }
 
   @Override
-  public Stream<? extends SagaState> loadAll(Iterable<InstanceKeySearchParam> searchParams) {
-    log.debug("Loading all saga states for search params: ");
-    searchParams.forEach(param -> {log.debug("type = {}, instanceKey = {}", param.getSagaTypeName(), param.getInstanceKey());});
+  public Stream<? extends SagaState<?>> loadAll(Iterable<InstanceKeySearchParam> searchParams) {
+    if (log.isDebugEnabled()) {
+      log.debug("Loading all saga states for search params: ");
+      searchParams.forEach(param -> {log.debug("type = {}, instanceKey = {}", param.getSagaTypeName(), param.getInstanceKey());});
+    }
     return super.loadAll(searchParams);
   }
 
-  private void saveInDB(SagaState state) {
+  private void saveInDB(SagaState<?> state) {
     Optional.of(state)
         .filter(SellTicketState.class::isInstance)
         .map(SellTicketState.class::cast)
         .ifPresent(sellTicketState -> {
-          //insert but don't update
           if(!mockDBStorage.containsKey(sellTicketState.getRequestId())) {
-            mockDBStorage.putIfAbsent(sellTicketState.getRequestId(), sellTicketState);
+            //insert the whole state only once
+            mockDBStorage.putIfAbsent(sellTicketState.getRequestId(), new DBRecord(sellTicketState.copy()));
+          } else if (sellTicketState.getDirtyFields() != 0) {
+            //capture what changed now, the delta is written on the next flush
+            pendingDeltas.merge(sellTicketState.getRequestId(),
+                SellTicketStateDelta.capture(sellTicketState, sellTicketState.getDirtyFields()),
+                SellTicketStateDelta::mergedWith);
           }
+          sellTicketState.clearDirtyFields();
         });
+    if (pendingDeltas.size() >= MAX_PENDING_DELTAS) {
+      flushDeltas();
+    }
   }
 
   private void removeFromDB(String sagaId) {
-    Optional.of(load(sagaId))
+    Optional.ofNullable(load(sagaId))
         .filter(SellTicketState.class::isInstance)
         .map(SellTicketState.class::cast)
         .ifPresent(sellTicketState -> {
+          pendingDeltas.remove(sellTicketState.getRequestId());
           mockDBStorage.remove(sellTicketState.getRequestId());
         });
   }
 
+  /**
+   * Writes the deltas captured since the last flush, one per saga. The in-memory states are not read, so a handler that
+   * is still changing its state never leaks half-done values into the DB.
+   */
+  public void flushDeltas() {
+    int written = 0;
+    for (String requestId : pendingDeltas.keySet()) {
+      SellTicketStateDelta delta = pendingDeltas.remove(requestId);
+      if (delta == null) {
+        continue;
+      }
+      DBRecord record = mockDBStorage.get(requestId);
+      if (record != null) {
+        record.append(delta);
+        written++;
+      }
+    }
+    log.debug("Flushed {} saga state deltas to DB", written);
+  }
+
+  private void scheduledFlush() {
+    try {
+      flushDeltas();
+    } catch (RuntimeException e) {
+      //an exception would cancel the periodic flush
+      log.error("Unable to flush saga state deltas to DB", e);
+    }
+  }
+
+  /**
+   * Stops the background flush and writes the deltas that are still pending.
+   */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      flushScheduler.shutdown();
+      flushDeltas();
+    }
+  }
+
+  /**
+   * Folds the deltas of every saga into its snapshot.
+   */
+  public void compactDB() {
+    flushDeltas();
+    mockDBStorage.values().forEach(DBRecord::compact);
+  }
+
   public List<String> getUnfinishedSagasFromDB() {
+    flushDeltas();
     return new ArrayList<>(mockDBStorage.keySet());
   }
 
   public SellTicketState getSagaStateFromDB (String requestId) {
-    return mockDBStorage.get(requestId);
+    flushDeltas();
+    DBRecord record = mockDBStorage.get(requestId);
+    return record != null ? record.materialize() : null;
+  }
+
+  /**
+   * DB representation of a saga: the snapshot inserted on the first save plus the deltas written since then.
+   */
+  private static class DBRecord {
+    private SellTicketState snapshot;
+    private List<SellTicketStateDelta> deltas = new ArrayList<>();
+
+    private DBRecord(SellTicketState snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    private synchronized void append(SellTicketStateDelta delta) {
+      deltas.add(delta);
+      if (deltas.size() >= COMPACTION_THRESHOLD) {
+        compact();
+      }
+    }
+
+    private synchronized void compact() {
+      if (!deltas.isEmpty()) {
+        snapshot = materialize();
+        deltas = new ArrayList<>();
+      }
+    }
+
+    private synchronized SellTicketState materialize() {
+      SellTicketState state = snapshot.copy();
+      deltas.forEach(delta -> delta.applyTo(state));
+      state.clearDirtyFields();
+      return state;
+    }
   }
 }
@@ -0,0 +1,81 @@
+package com.malush.saga.storage;
+
+import com.malush.saga.workflow.buy.SellTicketState;
+
+/**
+ * Field level change of a {@link SellTicketState} as written to the DB. Only the fields present in the field mask carry
+ * a value, the boolean flags are packed into a single bit mask using the same bits as the field mask.
+ */
+class SellTicketStateDelta {
+
+  private static final int FLAG_FIELDS = SellTicketState.COMPENSATION_TRIGGERED | SellTicketState.RMS_COMPENSATED | SellTicketState.ITMS_COMPENSATED;
+
+  private final int fields;
+  private final int flags;
+  private final String requestId;
+  private final double amount;
+  private final String retailerId;
+
+  private SellTicketStateDelta(int fields, int flags, String requestId, double amount, String retailerId) {
+    this.fields = fields;
+    this.flags = flags;
+    this.requestId = requestId;
+    this.amount = amount;
+    this.retailerId = retailerId;
+  }
+
+  /**
+   * Takes the current values of the given fields from the state.
+   */
+  static SellTicketStateDelta capture(SellTicketState state, int fields) {
+    int flags = 0;
+    if (state.isCompensationTriggered()) {
+      flags |= SellTicketState.COMPENSATION_TRIGGERED;
+    }
+    if (state.isRmsCompensated()) {
+      flags |= SellTicketState.RMS_COMPENSATED;
+    }
+    if (state.isItmsCompensated()) {
+      flags |= SellTicketState.ITMS_COMPENSATED;
+    }
+    return new SellTicketStateDelta(
+        fields,
+        flags & fields & FLAG_FIELDS,
+        (fields & SellTicketState.REQUEST_ID) != 0 ? state.getRequestId() : null,
+        (fields & SellTicketState.AMOUNT) != 0 ? state.getAmount() : 0,
+        (fields & SellTicketState.RETAILER_ID) != 0 ? state.getRetailerId() : null);
+  }
+
+  /**
+   * Coalesces this delta with a later one of the same saga, the later value wins for fields present in both.
+   */
+  SellTicketStateDelta mergedWith(SellTicketStateDelta later) {
+    return new SellTicketStateDelta(
+        fields | later.fields,
+        (flags & ~later.fields) | later.flags,
+        (later.fields & SellTicketState.REQUEST_ID) != 0 ? later.requestId : requestId,
+        (later.fields & SellTicketState.AMOUNT) != 0 ? later.amount : amount,
+        (later.fields & SellTicketState.RETAILER_ID) != 0 ? later.retailerId : retailerId);
+  }
+
+  void applyTo(SellTicketState state) {
+    if ((fields & SellTicketState.REQUEST_ID) != 0) {
+      state.setRequestId(requestId);
+    }
+    if ((fields & SellTicketState.AMOUNT) != 0) {
+      state.setAmount(amount);
+    }
+    if ((fields & SellTicketState.RETAILER_ID) != 0) {
+      state.setRetailerId(retailerId);
+    }
+    if ((fields & SellTicketState.COMPENSATION_TRIGGERED) != 0) {
+      state.setCompensationTriggered((flags & SellTicketState.COMPENSATION_TRIGGERED) != 0);
+    }
+    if ((fields & SellTicketState.RMS_COMPENSATED) != 0) {
+      state.setRmsCompensated((flags & SellTicketState.RMS_COMPENSATED) != 0);
+    }
+    if ((fields & SellTicketState.ITMS_COMPENSATED) != 0) {
+      state.setItmsCompensated((flags & SellTicketState.ITMS_COMPENSATED) != 0);
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.malush.saga.workflow.buy;
 
 import com.codebullets.sagalib.*;
 import com.codebullets.sagalib.timeout.Timeout;
+import com.malush.saga.audit.AuditEvent;
+import com.malush.saga.audit.AuditTrail;
 import com.malush.saga.workflow.participants.itms.ITMS;
 import com.malush.saga.workflow.participants.rms.RMS;
 import com.malush.saga.workflow.participants.rms.reply.ChargeRetailerReply;
@@ -14,50 +16,62 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * The handlers don't log on the normal path, they record their steps in the {@link AuditTrail}. The trail of a saga is
+ * only logged when it compensates or fails, and it is discarded once the saga has finished.
+ */
 public class SellTicketSaga extends AbstractSaga<SellTicketState> {
 
+  private static final long TIMEOUT_MILLIS = 1000;
+
   private final Logger log = LoggerFactory.getLogger(SellTicketSaga.class);
 
   private final RMS rms;
   private final ITMS itms;
+  private final AuditTrail auditTrail;
 
   @Inject
-  public SellTicketSaga(final RMS rms, final ITMS itms) {
+  public SellTicketSaga(final RMS rms, final ITMS itms, final AuditTrail auditTrail) {
     this.rms = rms;
     this.itms = itms;
+    this.auditTrail = auditTrail;
   }
 
   @StartsSaga
   public void ticketSale(final SellTicketRequest sellTicketRequest) throws Exception {
-    log.info("ticketSale request: amount = {}, retailerId = {}", sellTicketRequest.amount, sellTicketRequest.retailerId);
+    auditTrail.record(sellTicketRequest.requestId, AuditEvent.SAGA_STARTED, sellTicketRequest.amount);
     rms.chargeRetailerCMD(sellTicketRequest.requestId, sellTicketRequest.amount, sellTicketRequest.retailerId);
+    auditTrail.record(sellTicketRequest.requestId, AuditEvent.RMS_CHARGE_SENT, sellTicketRequest.amount);
     state().setRequestId(sellTicketRequest.requestId);
     state().setAmount(sellTicketRequest.amount);
     state().setRetailerId(sellTicketRequest.retailerId);
     state().addInstanceKey(sellTicketRequest.requestId);
 
-    requestTimeout(1, TimeUnit.SECONDS);
-
-    log.info("Command sent to RMS, Saga State: requestId = {}, finishedState = {}", sellTicketRequest.requestId, context().saga().isFinished());
+    requestTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    auditTrail.record(sellTicketRequest.requestId, AuditEvent.TIMEOUT_REQUESTED, TIMEOUT_MILLIS);
   }
 
   @EventHandler
   public void retailerCharged(final ChargeRetailerReply chargeRetailerReply) {
+    auditTrail.record(state().getRequestId(), AuditEvent.CHARGE_REPLY_RECEIVED, chargeRetailerReply.success);
     //check if timeout or another participant already triggered compensation
     if (state().isCompensationTriggered()) {
-      log.info("Compensation already triggered for requestId: {}. The reply is ignored.", state().getRequestId());
+      auditTrail.record(state().getRequestId(), AuditEvent.REPLY_IGNORED);
       return;
     }
     if (chargeRetailerReply.success) {
       try {
         itms.setTicketStatus(state().getRequestId(), state().getRetailerId(), ITMS.Status.SOLD);
+        auditTrail.record(state().getRequestId(), AuditEvent.ITMS_STATUS_SET, ITMS.Status.SOLD.ordinal());
         setFinished();
-        log.info("Reply received from RMS and transaction processed in ITMS. Saga State: requestId = {}, finishedState = {}", state().getRequestId(), context().saga().isFinished());
+        auditTrail.record(state().getRequestId(), AuditEvent.SAGA_FINISHED);
+        auditTrail.discard(state().getRequestId());
       } catch (Exception e) {
+        auditTrail.record(state().getRequestId(), AuditEvent.HANDLER_ERROR);
         log.error("Local transaction failed in ITMS", e);
+        auditTrail.dump(state().getRequestId(), "local transaction failed in ITMS");
       }
     } else {
-      log.info("RMS local transaction failed. Triggering compensation for requestId = {}", state().getRequestId());
       compensateTicket(new CompensateTicketRequest(chargeRetailerReply));
     }
   }
@@ -69,19 +83,20 @@ public class SellTicketSaga extends AbstractSaga<SellTicketState> {
 
   @EventHandler
   public void retailerCompensated(final CompensateRetailerReply compensateRetailerReply) {
+    auditTrail.record(state().getRequestId(), AuditEvent.RMS_COMPENSATION_REPLY_RECEIVED, compensateRetailerReply.success);
     if (compensateRetailerReply.success) {
       state().setRmsCompensated(true);
     }
     if (state().isItmsCompensated()) {
       setFinished();
-      log.info("Ticket compensated in both RMS and ITMS, requestId = {}, finishedState = {}", state().getSagaId(), context().saga().isFinished());
+      auditTrail.record(state().getRequestId(), AuditEvent.SAGA_FINISHED);
+      auditTrail.discard(state().getRequestId());
     }
   }
 
   @EventHandler
   public void handleTimeout(Timeout timeout) {
-    //log.info("is state equal to timeout state: {}", timeout.getSagaId().equals(state().getSagaId()));
-    log.info("Request timed out for requestId: {}", state().getRequestId());
+    auditTrail.record(state().getRequestId(), AuditEvent.TIMEOUT_FIRED);
     compensateTicket(new CompensateTicketRequest(state().getRequestId(), state().getAmount(), state().getRetailerId()));
   }
 
@@ -111,13 +126,19 @@ public class SellTicketSaga extends AbstractSaga<SellTicketState> {
   }
 
   private void compensateTicket(CompensateTicketRequest compensateTicketRequest) {
-    log.info("Handling compensation request. requestId = {}, retailerId = {}, sagaFinished = {}", state().getRequestId(), state().getRetailerId(), context().saga().isFinished());
+    boolean firstCompensation = !state().isCompensationTriggered();
+    auditTrail.record(compensateTicketRequest.requestId, firstCompensation ? AuditEvent.COMPENSATION_TRIGGERED : AuditEvent.COMPENSATION_RESENT);
     state().setCompensationTriggered(true);
     //send the command to RMS to compensate a retailer
     rms.compensateRetailerCMD(compensateTicketRequest.requestId, compensateTicketRequest.amount, compensateTicketRequest.retailerId);
+    auditTrail.record(compensateTicketRequest.requestId, AuditEvent.RMS_COMPENSATE_SENT, compensateTicketRequest.amount);
     //set ticket status back to ACTIVATED in ITMS
     itms.setTicketStatus(compensateTicketRequest.requestId, compensateTicketRequest.retailerId, ITMS.Status.ACTIVATED);
+    auditTrail.record(compensateTicketRequest.requestId, AuditEvent.ITMS_STATUS_SET, ITMS.Status.ACTIVATED.ordinal());
     state().setItmsCompensated(true);
+    if (firstCompensation) {
+      auditTrail.dump(compensateTicketRequest.requestId, "saga compensated");
+    }
   }
 }
 
@@ -2,6 +2,7 @@ package com.malush.saga.workflow.buy;
 
 import com.codebullets.sagalib.Saga;
 import com.codebullets.sagalib.processing.SagaProviderFactory;
+import com.malush.saga.audit.AuditTrail;
 import com.malush.saga.workflow.participants.itms.ITMS;
 import com.malush.saga.workflow.participants.rms.RMS;
 
@@ -9,8 +10,31 @@ import javax.inject.Provider;
 
 public class SellTicketSagaProviderFactory implements SagaProviderFactory {
 
+  // ticket statuses have to outlive a single saga instance, so all sagas share the same ITMS
+  private final ITMS itms = new ITMS();
+  private final AuditTrail auditTrail;
+
+  public SellTicketSagaProviderFactory() {
+    this(new AuditTrail());
+  }
+
+  public SellTicketSagaProviderFactory(AuditTrail auditTrail) {
+    this.auditTrail = auditTrail;
+  }
+
   @Override
   public Provider<? extends Saga> createProvider(final Class sagaClass) {
-    return () -> new SellTicketSaga(new RMS(), new ITMS());
+    if (!SellTicketSaga.class.equals(sagaClass)) {
+      throw new IllegalArgumentException("Unable to create saga " + sagaClass.getName());
+    }
+    return () -> new SellTicketSaga(new RMS(), itms, auditTrail);
+  }
+
+  public ITMS getItms() {
+    return itms;
+  }
+
+  public AuditTrail getAuditTrail() {
+    return auditTrail;
   }
 }
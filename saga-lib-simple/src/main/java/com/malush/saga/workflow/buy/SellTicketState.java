@@ -2,7 +2,20 @@ package com.malush.saga.workflow.buy;
 
 import com.codebullets.sagalib.AbstractSagaState;
 
+import java.util.Objects;
+
+/**
+ * Every setter that actually changes a value marks the field as dirty. The storage uses the dirty fields to persist only
+ * what has changed since the state was persisted the last time, see {@link com.malush.saga.storage.CustomStorage}.
+ */
 public class SellTicketState extends AbstractSagaState<String> {
+  public static final int REQUEST_ID = 1;
+  public static final int AMOUNT = 1 << 1;
+  public static final int RETAILER_ID = 1 << 2;
+  public static final int COMPENSATION_TRIGGERED = 1 << 3;
+  public static final int RMS_COMPENSATED = 1 << 4;
+  public static final int ITMS_COMPENSATED = 1 << 5;
+
   private String requestId;
   private double amount;
   private String retailerId;
@@ -10,12 +23,17 @@ public class SellTicketState extends AbstractSagaState<String> {
   private boolean rmsCompensated;
   private boolean itmsCompensated;
 
+  private transient int dirtyFields;
+
   public String getRequestId() {
     return requestId;
   }
 
   public void setRequestId(String requestId) {
-    this.requestId = requestId;
+    if (!Objects.equals(this.requestId, requestId)) {
+      this.requestId = requestId;
+      dirtyFields |= REQUEST_ID;
+    }
   }
 
   public double getAmount() {
@@ -23,7 +41,10 @@ public class SellTicketState extends AbstractSagaState<String> {
   }
 
   public void setAmount(double amount) {
-    this.amount = amount;
+    if (Double.compare(this.amount, amount) != 0) {
+      this.amount = amount;
+      dirtyFields |= AMOUNT;
+    }
   }
 
   public String getRetailerId() {
@@ -31,7 +52,10 @@ public class SellTicketState extends AbstractSagaState<String> {
   }
 
   public void setRetailerId(String retailerId) {
-    this.retailerId = retailerId;
+    if (!Objects.equals(this.retailerId, retailerId)) {
+      this.retailerId = retailerId;
+      dirtyFields |= RETAILER_ID;
+    }
   }
 
   public boolean isRmsCompensated() {
@@ -43,11 +67,17 @@ public class SellTicketState extends AbstractSagaState<String> {
   }
 
   public void setCompensationTriggered(boolean compensationTriggered) {
-    this.compensationTriggered = compensationTriggered;
+    if (this.compensationTriggered != compensationTriggered) {
+      this.compensationTriggered = compensationTriggered;
+      dirtyFields |= COMPENSATION_TRIGGERED;
+    }
   }
 
   public void setRmsCompensated(boolean rmsCompensated) {
-    this.rmsCompensated = rmsCompensated;
+    if (this.rmsCompensated != rmsCompensated) {
+      this.rmsCompensated = rmsCompensated;
+      dirtyFields |= RMS_COMPENSATED;
+    }
   }
 
   public boolean isItmsCompensated() {
@@ -55,6 +85,37 @@ public class SellTicketState extends AbstractSagaState<String> {
   }
 
   public void setItmsCompensated(boolean itmsCompensated) {
-    this.itmsCompensated = itmsCompensated;
+    if (this.itmsCompensated != itmsCompensated) {
+      this.itmsCompensated = itmsCompensated;
+      dirtyFields |= ITMS_COMPENSATED;
+    }
+  }
+
+  /**
+   * @return bit mask of the fields changed since the last {@link #clearDirtyFields()}
+   */
+  public int getDirtyFields() {
+    return dirtyFields;
+  }
+
+  public void clearDirtyFields() {
+    dirtyFields = 0;
+  }
+
+  /**
+   * @return a detached copy of this state with no dirty fields, e.g. to be used as a DB snapshot
+   */
+  public SellTicketState copy() {
+    SellTicketState copy = new SellTicketState();
+    copy.setSagaId(getSagaId());
+    copy.setType(getType());
+    instanceKeys().forEach(copy::addInstanceKey);
+    copy.requestId = requestId;
+    copy.amount = amount;
+    copy.retailerId = retailerId;
+    copy.compensationTriggered = compensationTriggered;
+    copy.rmsCompensated = rmsCompensated;
+    copy.itmsCompensated = itmsCompensated;
+    return copy;
   }
 }
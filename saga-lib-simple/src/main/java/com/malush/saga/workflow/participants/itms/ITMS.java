@@ -3,9 +3,12 @@ package com.malush.saga.workflow.participants.itms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collection;
 
+/**
+ * Stand-in for the ticket management system. Ticket statuses are kept per requestId in a sharded {@link TicketStatusStore},
+ * so a single instance is meant to be shared by all sagas.
+ */
 public class ITMS {
 
   private final Logger log = LoggerFactory.getLogger(ITMS.class);
@@ -15,14 +18,32 @@ public class ITMS {
     ACTIVATED
   }
 
-  private ConcurrentMap<String, Status> ticketStatuses = new ConcurrentHashMap();
+  private final TicketStatusStore ticketStatuses = new TicketStatusStore();
 
   public void setTicketStatus(String requestId, String retailerId, Status status) {
-    log.info("requestId = {}, retailerId = {}, status = {}", requestId, retailerId, status);
-    ticketStatuses.putIfAbsent(retailerId, status);
+    if (log.isDebugEnabled()) {
+      log.debug("requestId = {}, retailerId = {}, status = {}", requestId, retailerId, status);
+    }
+    ticketStatuses.set(requestId, retailerId, status);
   }
 
-  public Status getTicketStatus(String retailerId) {
-    return ticketStatuses.get(retailerId);
+  /**
+   * Moves a batch of already known tickets to the given status, e.g. when a compensation sweep reactivates the tickets
+   * of all hanging sagas at once.
+   *
+   * @return number of tickets whose status has changed
+   */
+  public int setTicketStatuses(Collection<String> requestIds, Status status) {
+    int changed = ticketStatuses.setAll(requestIds, status);
+    log.debug("{} of {} tickets changed to status = {}", changed, requestIds.size(), status);
+    return changed;
+  }
+
+  public Status getTicketStatus(String requestId) {
+    return ticketStatuses.get(requestId);
+  }
+
+  public long countTicketStatuses(String retailerId, Status status) {
+    return ticketStatuses.count(retailerId, status);
   }
 }
@@ -0,0 +1,241 @@
+package com.malush.saga.workflow.participants.itms;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ticket status per requestId, split into shards so that concurrent saga handlers rarely touch the same lock.
+ * <p>
+ * Each shard is an open addressing hash table made of parallel arrays: the requestIds, the status as a byte and the
+ * retailer as an int code (retailer ids are interned into a shared dictionary). Next to the table every shard keeps the
+ * number of tickets per retailer and status, so counting the statuses of a retailer does not need to scan the tickets.
+ * Bulk updates group the tickets by shard first and then take every shard lock only once.
+ */
+class TicketStatusStore {
+
+  private static final byte NO_STATUS = 0;
+  private static final int STATUS_COUNT = ITMS.Status.values().length;
+  private static final ITMS.Status[] STATUSES = ITMS.Status.values();
+
+  private final Shard[] shards;
+  private final int shardMask;
+  private final ConcurrentMap<String, Integer> retailerCodes = new ConcurrentHashMap<>();
+  private final AtomicInteger nextRetailerCode = new AtomicInteger();
+
+  TicketStatusStore() {
+    this(64);
+  }
+
+  /**
+   * @param shardCount number of shards, rounded up to the next power of two
+   */
+  TicketStatusStore(int shardCount) {
+    int count = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+    this.shards = new Shard[count];
+    this.shardMask = count - 1;
+    for (int i = 0; i < count; i++) {
+      shards[i] = new Shard(Integer.numberOfTrailingZeros(count));
+    }
+  }
+
+  /**
+   * @return the previous status of the ticket or null if the ticket was unknown
+   */
+  ITMS.Status set(String requestId, String retailerId, ITMS.Status status) {
+    int hash = hash(requestId);
+    int retailer = retailerCode(retailerId);
+    Shard shard = shards[hash & shardMask];
+    synchronized (shard) {
+      return toStatus(shard.put(requestId, hash, retailer, toByte(status)));
+    }
+  }
+
+  ITMS.Status get(String requestId) {
+    int hash = hash(requestId);
+    Shard shard = shards[hash & shardMask];
+    synchronized (shard) {
+      return toStatus(shard.get(requestId, hash));
+    }
+  }
+
+  /**
+   * Moves all the given tickets, which must already be known, to the given status. Unknown tickets are skipped as their
+   * retailer is not known.
+   *
+   * @return number of tickets whose status has changed
+   */
+  int setAll(Collection<String> requestIds, ITMS.Status status) {
+    // group the tickets by shard: count per shard, then fill one array ordered by shard
+    int[] hashes = new int[requestIds.size()];
+    String[] ids = requestIds.toArray(new String[0]);
+    int[] offsets = new int[shards.length + 1];
+    for (int i = 0; i < ids.length; i++) {
+      hashes[i] = hash(ids[i]);
+      offsets[(hashes[i] & shardMask) + 1]++;
+    }
+    for (int s = 0; s < shards.length; s++) {
+      offsets[s + 1] += offsets[s];
+    }
+    int[] order = new int[ids.length];
+    int[] fill = Arrays.copyOf(offsets, shards.length);
+    for (int i = 0; i < ids.length; i++) {
+      order[fill[hashes[i] & shardMask]++] = i;
+    }
+
+    byte newStatus = toByte(status);
+    int changed = 0;
+    for (int s = 0; s < shards.length; s++) {
+      if (offsets[s] == offsets[s + 1]) {
+        continue;
+      }
+      Shard shard = shards[s];
+      synchronized (shard) {
+        for (int i = offsets[s]; i < offsets[s + 1]; i++) {
+          int index = order[i];
+          byte previous = shard.update(ids[index], hashes[index], newStatus);
+          if (previous != NO_STATUS && previous != newStatus) {
+            changed++;
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  long count(String retailerId, ITMS.Status status) {
+    Integer retailer = retailerCodes.get(retailerId);
+    if (retailer == null) {
+      return 0;
+    }
+    long total = 0;
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        total += shard.count(retailer, toByte(status));
+      }
+    }
+    return total;
+  }
+
+  private int retailerCode(String retailerId) {
+    Integer code = retailerCodes.get(retailerId);
+    return code != null ? code : retailerCodes.computeIfAbsent(retailerId, id -> nextRetailerCode.getAndIncrement());
+  }
+
+  private static int hash(String requestId) {
+    int h = requestId.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static byte toByte(ITMS.Status status) {
+    return (byte) (status.ordinal() + 1);
+  }
+
+  private static ITMS.Status toStatus(byte status) {
+    return status == NO_STATUS ? null : STATUSES[status - 1];
+  }
+
+  /**
+   * Open addressing table with linear probing. Tickets are never removed, so no tombstones are needed.
+   * All access is guarded by the shard's monitor.
+   */
+  private static class Shard {
+    // the low bits of the hash select the shard, the remaining ones select the slot
+    private final int shift;
+    private String[] keys = new String[16];
+    private byte[] statuses = new byte[16];
+    private int[] retailers = new int[16];
+    private int size;
+    // number of tickets per (retailer code, status)
+    private int[] counts = new int[16 * STATUS_COUNT];
+
+    Shard(int shift) {
+      this.shift = shift;
+    }
+
+    byte get(String requestId, int hash) {
+      int slot = find(requestId, hash);
+      return keys[slot] != null ? statuses[slot] : NO_STATUS;
+    }
+
+    byte put(String requestId, int hash, int retailer, byte status) {
+      int slot = find(requestId, hash);
+      if (keys[slot] == null) {
+        keys[slot] = requestId;
+        retailers[slot] = retailer;
+        statuses[slot] = status;
+        increment(retailer, status, 1);
+        if (++size * 2 > keys.length) {
+          grow();
+        }
+        return NO_STATUS;
+      }
+      byte previous = statuses[slot];
+      if (retailers[slot] != retailer) {
+        increment(retailers[slot], previous, -1);
+        retailers[slot] = retailer;
+        increment(retailer, status, 1);
+      } else if (previous != status) {
+        increment(retailer, previous, -1);
+        increment(retailer, status, 1);
+      }
+      statuses[slot] = status;
+      return previous;
+    }
+
+    byte update(String requestId, int hash, byte status) {
+      int slot = find(requestId, hash);
+      if (keys[slot] == null) {
+        return NO_STATUS;
+      }
+      byte previous = statuses[slot];
+      if (previous != status) {
+        increment(retailers[slot], previous, -1);
+        increment(retailers[slot], status, 1);
+        statuses[slot] = status;
+      }
+      return previous;
+    }
+
+    long count(int retailer, byte status) {
+      int index = retailer * STATUS_COUNT + status - 1;
+      return index < counts.length ? counts[index] : 0;
+    }
+
+    private int find(String requestId, int hash) {
+      int mask = keys.length - 1;
+      int slot = (hash >>> shift) & mask;
+      while (keys[slot] != null && !keys[slot].equals(requestId)) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void increment(int retailer, byte status, int delta) {
+      int index = retailer * STATUS_COUNT + status - 1;
+      if (index >= counts.length) {
+        counts = Arrays.copyOf(counts, Math.max(counts.length * 2, (retailer + 1) * STATUS_COUNT));
+      }
+      counts[index] += delta;
+    }
+
+    private void grow() {
+      String[] oldKeys = keys;
+      byte[] oldStatuses = statuses;
+      int[] oldRetailers = retailers;
+      keys = new String[oldKeys.length * 2];
+      statuses = new byte[oldKeys.length * 2];
+      retailers = new int[oldKeys.length * 2];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          int slot = find(oldKeys[i], hash(oldKeys[i]));
+          keys[slot] = oldKeys[i];
+          statuses[slot] = oldStatuses[i];
+          retailers[slot] = oldRetailers[i];
+        }
+      }
+    }
+  }
+}
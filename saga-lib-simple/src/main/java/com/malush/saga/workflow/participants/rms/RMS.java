@@ -9,10 +9,14 @@ public class RMS {
   private final Logger log = LoggerFactory.getLogger(RMS.class);
 
   public void chargeRetailerCMD(String requestId, double amount, String retailerId) {
-    log.info("requestId = {}, amount = {}, retailerId = {}", requestId, amount, retailerId);
+    if (log.isDebugEnabled()) {
+      log.debug("requestId = {}, amount = {}, retailerId = {}", requestId, amount, retailerId);
+    }
   }
 
   public void compensateRetailerCMD(String requestId, double amount, String retailerId) {
-    log.info("requestId = {}, amount = {}, retailerId = {}", requestId, amount, retailerId);
+    if (log.isDebugEnabled()) {
+      log.debug("requestId = {}, amount = {}, retailerId = {}", requestId, amount, retailerId);
+    }
   }
 }
@@ -0,0 +1,83 @@
+package com.malush.saga.audit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AuditTrailTest {
+
+  @Test
+  public void keepsTheEventsOfEachSagaApart() {
+    AuditTrail auditTrail = new AuditTrail(8);
+    auditTrail.record("request1", AuditEvent.SAGA_STARTED, 10.0);
+    auditTrail.record("request2", AuditEvent.SAGA_STARTED, 20.0);
+    auditTrail.record("request1", AuditEvent.TIMEOUT_FIRED);
+
+    String trail = auditTrail.format("request1");
+    assertTrue(trail.contains("SAGA_STARTED amount = 10.0"));
+    assertTrue(trail.contains("TIMEOUT_FIRED"));
+    assertFalse(trail.contains("amount = 20.0"));
+    assertTrue(trail.indexOf("SAGA_STARTED") < trail.indexOf("TIMEOUT_FIRED"));
+  }
+
+  @Test
+  public void historyOfASagaSurvivesTheEventsOfOtherSagas() {
+    AuditTrail auditTrail = new AuditTrail(4);
+    auditTrail.record("request1", AuditEvent.SAGA_STARTED, 10.0);
+    for (int i = 0; i < 1000; i++) {
+      auditTrail.record("other" + i, AuditEvent.SAGA_STARTED, 1.0);
+      auditTrail.record("other" + i, AuditEvent.TIMEOUT_FIRED);
+    }
+
+    assertTrue(auditTrail.format("request1").contains("SAGA_STARTED amount = 10.0"));
+  }
+
+  @Test
+  public void fullRingKeepsTheMostRecentEventsOldestFirst() {
+    AuditTrail auditTrail = new AuditTrail(3);
+    auditTrail.record("request1", AuditEvent.SAGA_STARTED, 10.0);
+    auditTrail.record("request1", AuditEvent.RMS_CHARGE_SENT, 10.0);
+    auditTrail.record("request1", AuditEvent.TIMEOUT_REQUESTED, 1000L);
+    auditTrail.record("request1", AuditEvent.TIMEOUT_FIRED);
+
+    String trail = auditTrail.format("request1");
+    assertFalse(trail.contains("SAGA_STARTED"));
+    assertTrue(trail.indexOf("RMS_CHARGE_SENT") < trail.indexOf("TIMEOUT_REQUESTED after = 1000 ms"));
+    assertTrue(trail.indexOf("TIMEOUT_REQUESTED") < trail.indexOf("TIMEOUT_FIRED"));
+  }
+
+  @Test
+  public void onlyStartingEventsOpenATrail() {
+    AuditTrail auditTrail = new AuditTrail(8);
+    auditTrail.record("request1", AuditEvent.REST_RESPONSE_SENT, true);
+    assertEquals(0, auditTrail.size());
+    assertTrue(auditTrail.format("request1").contains("no events recorded"));
+
+    auditTrail.record("request1", AuditEvent.REST_REQUEST_RECEIVED, 10.0);
+    assertEquals(1, auditTrail.size());
+  }
+
+  @Test
+  public void dumpOnceLogsATrailOnlyTheFirstTime() {
+    AuditTrail auditTrail = new AuditTrail(8);
+    auditTrail.record("request1", AuditEvent.SAGA_STARTED, 10.0);
+
+    assertTrue(auditTrail.dumpOnce("request1", "hanging saga"));
+    assertFalse(auditTrail.dumpOnce("request1", "hanging saga"));
+    assertFalse(auditTrail.dumpOnce("unknown", "hanging saga"));
+  }
+
+  @Test
+  public void discardedTrailIsNotReopenedByLateEvents() {
+    AuditTrail auditTrail = new AuditTrail(8);
+    auditTrail.record("request1", AuditEvent.SAGA_STARTED, 10.0);
+    auditTrail.record("request1", AuditEvent.SAGA_FINISHED);
+    auditTrail.discard("request1");
+
+    auditTrail.record("request1", AuditEvent.REST_RESPONSE_SENT, false);
+
+    assertEquals(0, auditTrail.size());
+  }
+}
@@ -0,0 +1,113 @@
+package com.malush.saga.benchmark;
+
+import com.codebullets.sagalib.storage.MemoryStorage;
+import com.codebullets.sagalib.storage.StateStorage;
+import com.malush.saga.storage.ConcurrentSagaStorage;
+import com.malush.saga.workflow.buy.SellTicketSaga;
+import com.malush.saga.workflow.buy.SellTicketState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Contention benchmark of saga state storages at 1 to 64 threads, comparing saga-lib's {@link MemoryStorage} with
+ * {@link ConcurrentSagaStorage}.
+ * <p>
+ * Every thread runs the mix of storage calls a message stream does while handling a message: mostly lookups by
+ * instance key, as saga-lib does when searching for the sagas of a message, some loads by saga id and some saves.
+ * Throughput in operations per second is logged per storage and thread count.
+ * <p>
+ * Usage: StorageContentionBenchmark [sagas] [seconds per run]
+ */
+public class StorageContentionBenchmark {
+
+  private static Logger log = LoggerFactory.getLogger(StorageContentionBenchmark.class);
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+  private static final String SAGA_TYPE = SellTicketSaga.class.getName();
+
+  public static void main(String[] args) throws InterruptedException {
+    int sagas = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    long seconds = args.length > 1 ? Long.parseLong(args[1]) : 2;
+
+    run("MemoryStorage", MemoryStorage::new, sagas, seconds);
+    run("ConcurrentSagaStorage", ConcurrentSagaStorage::new, sagas, seconds);
+  }
+
+  private static void run(String name, Supplier<StateStorage> storageFactory, int sagas, long seconds) throws InterruptedException {
+    for (int threads : THREADS) {
+      StateStorage storage = storageFactory.get();
+      SellTicketState[] states = populate(storage, sagas);
+      // warm up before measuring
+      measure(storage, states, threads, TimeUnit.MILLISECONDS.toNanos(500));
+      long ops = measure(storage, states, threads, TimeUnit.SECONDS.toNanos(seconds));
+      log.info("{}: threads = {}, throughput = {} ops/s", name, threads, ops / seconds);
+    }
+  }
+
+  private static SellTicketState[] populate(StateStorage storage, int sagas) {
+    SellTicketState[] states = new SellTicketState[sagas];
+    for (int i = 0; i < sagas; i++) {
+      SellTicketState state = new SellTicketState();
+      String requestId = UUID.randomUUID().toString();
+      state.setSagaId(UUID.randomUUID().toString());
+      state.setType(SAGA_TYPE);
+      state.setRequestId(requestId);
+      state.setRetailerId("retailer" + (i % 100));
+      state.setAmount(10);
+      state.addInstanceKey(requestId);
+      storage.save(state);
+      states[i] = state;
+    }
+    return states;
+  }
+
+  private static long measure(StateStorage storage, SellTicketState[] states, int threads, long durationNanos) throws InterruptedException {
+    LongAdder ops = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(threads);
+    long deadline = System.nanoTime() + durationNanos;
+
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long count = 0;
+        try {
+          start.await();
+          while ((count & 0xFF) != 0 || System.nanoTime() < deadline) {
+            SellTicketState state = states[random.nextInt(states.length)];
+            int op = random.nextInt(10);
+            if (op < 7) {
+              if (storage.load(SAGA_TYPE, state.getRequestId()).size() != 1) {
+                throw new IllegalStateException("Saga not found by instance key: " + state.getRequestId());
+              }
+            } else if (op < 9) {
+              if (storage.load(state.getSagaId()) == null) {
+                throw new IllegalStateException("Saga not found by id: " + state.getSagaId());
+              }
+            } else {
+              storage.save(state);
+            }
+            count++;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          ops.add(count);
+          done.countDown();
+        }
+      });
+      worker.setDaemon(true);
+      worker.start();
+    }
+    start.countDown();
+    done.await();
+    return ops.sum();
+  }
+}
@@ -0,0 +1,118 @@
+package com.malush.saga.benchmark;
+
+import com.malush.saga.workflow.participants.itms.ITMS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput benchmark of the {@link ITMS} ticket status engine at 1 to 64 threads.
+ * <p>
+ * The single ticket run mixes what the saga handlers do: selling new tickets, reactivating them on compensation and
+ * reading their status. The bulk run moves batches of known tickets back and forth between statuses, as compensation
+ * sweeps do. Throughput is logged in tickets per second.
+ * <p>
+ * Usage: TicketStatusBenchmark [tickets] [seconds per run] [batch size]
+ */
+public class TicketStatusBenchmark {
+
+  private static Logger log = LoggerFactory.getLogger(TicketStatusBenchmark.class);
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+  private static final String[] RETAILERS = new String[100];
+
+  static {
+    for (int i = 0; i < RETAILERS.length; i++) {
+      RETAILERS[i] = "retailer" + i;
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int tickets = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    long seconds = args.length > 1 ? Long.parseLong(args[1]) : 2;
+    int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+    for (int threads : THREADS) {
+      ITMS itms = new ITMS();
+      String[] requestIds = populate(itms, tickets);
+      measure(itms, requestIds, threads, TimeUnit.MILLISECONDS.toNanos(500), 0);
+      long ops = measure(itms, requestIds, threads, TimeUnit.SECONDS.toNanos(seconds), 0);
+      long bulkOps = measure(itms, requestIds, threads, TimeUnit.SECONDS.toNanos(seconds), batchSize);
+      log.info("threads = {}, single ticket throughput = {} tickets/s, bulk throughput = {} tickets/s (batch size = {}), " +
+              "retailer0 sold/activated = {}/{}",
+          threads, ops / seconds, bulkOps / seconds, batchSize,
+          itms.countTicketStatuses(RETAILERS[0], ITMS.Status.SOLD), itms.countTicketStatuses(RETAILERS[0], ITMS.Status.ACTIVATED));
+    }
+  }
+
+  private static String[] populate(ITMS itms, int tickets) {
+    String[] requestIds = new String[tickets];
+    for (int i = 0; i < tickets; i++) {
+      requestIds[i] = UUID.randomUUID().toString();
+      itms.setTicketStatus(requestIds[i], RETAILERS[i % RETAILERS.length], ITMS.Status.SOLD);
+    }
+    return requestIds;
+  }
+
+  /**
+   * @param batchSize 0 for single ticket operations, otherwise the number of tickets per bulk transition
+   * @return number of tickets processed
+   */
+  private static long measure(ITMS itms, String[] requestIds, int threads, long durationNanos, int batchSize) throws InterruptedException {
+    LongAdder processed = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(threads);
+    long deadline = System.nanoTime() + durationNanos;
+
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long count = 0;
+        try {
+          start.await();
+          if (batchSize == 0) {
+            while ((count & 0xFF) != 0 || System.nanoTime() < deadline) {
+              int index = random.nextInt(requestIds.length);
+              int op = random.nextInt(10);
+              if (op < 4) {
+                itms.setTicketStatus(requestIds[index], RETAILERS[index % RETAILERS.length], ITMS.Status.SOLD);
+              } else if (op < 6) {
+                itms.setTicketStatus(requestIds[index], RETAILERS[index % RETAILERS.length], ITMS.Status.ACTIVATED);
+              } else {
+                itms.getTicketStatus(requestIds[index]);
+              }
+              count++;
+            }
+          } else {
+            String[] batch = new String[batchSize];
+            List<String> batchView = Arrays.asList(batch);
+            while (System.nanoTime() < deadline) {
+              for (int i = 0; i < batchSize; i++) {
+                batch[i] = requestIds[random.nextInt(requestIds.length)];
+              }
+              itms.setTicketStatuses(batchView, random.nextBoolean() ? ITMS.Status.SOLD : ITMS.Status.ACTIVATED);
+              count += batchSize;
+            }
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          processed.add(count);
+          done.countDown();
+        }
+      });
+      worker.setDaemon(true);
+      worker.start();
+    }
+    start.countDown();
+    done.await();
+    return processed.sum();
+  }
+}
@@ -0,0 +1,174 @@
+package com.malush.saga.orchestrator;
+
+import com.codebullets.sagalib.AbstractSaga;
+import com.codebullets.sagalib.AbstractSagaState;
+import com.codebullets.sagalib.KeyReader;
+import com.codebullets.sagalib.Saga;
+import com.codebullets.sagalib.StartsSaga;
+import com.codebullets.sagalib.processing.SagaProviderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Provider;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SagaOrchestratorTest {
+
+  private static final long WAIT_SECONDS = 5;
+
+  private final BlockingQueue<String> handled = new LinkedBlockingQueue<>();
+  private SagaOrchestrator orchestrator;
+
+  @Before
+  public void setUp() {
+    orchestrator = new SagaOrchestrator();
+  }
+
+  @After
+  public void tearDown() {
+    orchestrator.shutdown(WAIT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void routesMessagesToTheSagaTypeHandlingThem() throws Exception {
+    orchestrator.register(pingRegistration()).start();
+
+    assertTrue(orchestrator.dispatch(new Ping("request1", false)));
+    assertFalse(orchestrator.dispatch("not handled by any saga type"));
+
+    assertEquals("request1", handled.poll(WAIT_SECONDS, TimeUnit.SECONDS));
+    SagaTypeMetrics metrics = orchestrator.metrics().get(0);
+    assertEquals(PingSaga.class.getName(), metrics.getTypeName());
+    assertEquals(1, metrics.getSubmitted());
+    assertNotNull(orchestrator.getStorage(PingSaga.class.getName()));
+  }
+
+  @Test
+  public void rejectsMessagesOnceTheQueueIsFull() throws Exception {
+    CountDownLatch handling = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    orchestrator.register(pingRegistration()
+        .withThreads(1)
+        .withQueueCapacity(1)
+        .beforeHandling(message -> {
+          handling.countDown();
+          await(release);
+        }))
+        .start();
+
+    try {
+      assertTrue(orchestrator.dispatch(new Ping("request1", false)));
+      assertTrue(handling.await(WAIT_SECONDS, TimeUnit.SECONDS));
+      assertTrue(orchestrator.dispatch(new Ping("request2", false)));
+      assertFalse(orchestrator.dispatch(new Ping("request3", false)));
+
+      SagaTypeMetrics metrics = orchestrator.metrics().get(0);
+      assertEquals(2, metrics.getSubmitted());
+      assertEquals(1, metrics.getRejected());
+      assertEquals(1, metrics.getQueueDepth());
+    } finally {
+      release.countDown();
+    }
+    assertEquals("request1", handled.poll(WAIT_SECONDS, TimeUnit.SECONDS));
+    assertEquals("request2", handled.poll(WAIT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void reportsHandlerErrorsToTheListener() throws Exception {
+    BlockingQueue<Object> failedMessages = new LinkedBlockingQueue<>();
+    orchestrator.register(pingRegistration()
+        .onHandlerError((message, e) -> failedMessages.add(message)))
+        .start();
+
+    Ping ping = new Ping("request1", true);
+    assertTrue(orchestrator.dispatch(ping));
+
+    assertSame(ping, failedMessages.poll(WAIT_SECONDS, TimeUnit.SECONDS));
+    SagaTypeMetrics metrics = orchestrator.metrics().get(0);
+    assertEquals(1, metrics.getFailed());
+    assertEquals(0, metrics.getCompleted());
+  }
+
+  private SagaTypeRegistration pingRegistration() {
+    return SagaTypeRegistration.forSaga(PingSaga.class)
+        .usingSagaProviderFactory(new PingSagaProviderFactory(handled))
+        .handling(Ping.class);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(WAIT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static class Ping {
+    final String requestId;
+    final boolean fail;
+
+    Ping(String requestId, boolean fail) {
+      this.requestId = requestId;
+      this.fail = fail;
+    }
+  }
+
+  public static class PingState extends AbstractSagaState<String> {
+  }
+
+  public static class PingSaga extends AbstractSaga<PingState> {
+
+    private final BlockingQueue<String> handled;
+
+    PingSaga(BlockingQueue<String> handled) {
+      this.handled = handled;
+    }
+
+    @StartsSaga
+    public void ping(final Ping ping) {
+      if (ping.fail) {
+        throw new IllegalStateException("ping " + ping.requestId + " failed");
+      }
+      handled.add(ping.requestId);
+      setFinished();
+    }
+
+    @Override
+    public void createNewState() {
+      setState(new PingState());
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // return type given by Saga
+    public Collection<KeyReader> keyReaders() {
+      return Collections.emptyList();
+    }
+  }
+
+  private static class PingSagaProviderFactory implements SagaProviderFactory {
+
+    private final BlockingQueue<String> handled;
+
+    PingSagaProviderFactory(BlockingQueue<String> handled) {
+      this.handled = handled;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // type parameter bound given by SagaProviderFactory
+    public <T extends Saga> Provider<T> createProvider(Class<T> sagaClass) {
+      return () -> sagaClass.cast(new PingSaga(handled));
+    }
+  }
+}
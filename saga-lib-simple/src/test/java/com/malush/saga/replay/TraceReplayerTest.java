@@ -0,0 +1,48 @@
+package com.malush.saga.replay;
+
+import com.malush.saga.workflow.buy.SellTicketRequest;
+import com.malush.saga.workflow.participants.rms.reply.ChargeRetailerReply;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class TraceReplayerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replayingATraceTwiceGivesTheSameCounts() throws Exception {
+    String path = folder.newFile("sell-ticket.trace").getPath();
+    String hangingRequestId = UUID.randomUUID().toString();
+    String chargedRequestId = UUID.randomUUID().toString();
+    try (TraceRecorder recorder = TraceRecorder.toFile(path)) {
+      recorder.record(new SellTicketRequest(hangingRequestId, "retailer1", 10));
+      recorder.record(new SellTicketRequest(chargedRequestId, "retailer2", 20));
+      recorder.record(new ChargeRetailerReply(true, chargedRequestId, 20, "retailer2"));
+    }
+
+    ReplayReport first = replay(path);
+    ReplayReport second = replay(path);
+
+    assertEquals(3, first.getMessages());
+    assertEquals(0, first.getErrors());
+    // only the saga that never got its charge reply times out
+    assertEquals(1, first.getReplayedTimeouts());
+    assertEquals(first.getMessages(), second.getMessages());
+    assertEquals(first.getErrors(), second.getErrors());
+    assertEquals(first.getRecordedTimeouts(), second.getRecordedTimeouts());
+    assertEquals(first.getReplayedTimeouts(), second.getReplayedTimeouts());
+  }
+
+  private static ReplayReport replay(String path) throws IOException {
+    try (TraceReader reader = TraceReader.fromFile(path)) {
+      return new TraceReplayer(TraceReplayer.Pace.MAX_SPEED).replay(reader);
+    }
+  }
+}
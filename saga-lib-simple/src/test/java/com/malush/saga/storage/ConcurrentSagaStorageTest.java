@@ -0,0 +1,97 @@
+package com.malush.saga.storage;
+
+import com.codebullets.sagalib.SagaState;
+import com.codebullets.sagalib.storage.InstanceKeySearchParam;
+import com.malush.saga.workflow.buy.SellTicketSaga;
+import com.malush.saga.workflow.buy.SellTicketState;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentSagaStorageTest {
+
+  private static final String SAGA_TYPE = SellTicketSaga.class.getName();
+
+  private ConcurrentSagaStorage storage;
+
+  @Before
+  public void setUp() {
+    storage = new ConcurrentSagaStorage();
+  }
+
+  @Test
+  public void savedStateIsFoundByIdAndInstanceKey() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+
+    assertSame(state, storage.load("saga1"));
+    assertEquals(1, storage.load(SAGA_TYPE, "request1").size());
+    assertSame(state, storage.load(SAGA_TYPE, "request1").iterator().next());
+    assertTrue(storage.load("OtherSaga", "request1").isEmpty());
+  }
+
+  @Test
+  public void savingChangedInstanceKeysReindexesTheState() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+
+    state.removeInstanceKey("request1");
+    state.addInstanceKey("request2");
+    storage.save(state);
+
+    assertTrue(storage.load(SAGA_TYPE, "request1").isEmpty());
+    assertEquals(1, storage.load(SAGA_TYPE, "request2").size());
+    assertSame(state, storage.load(SAGA_TYPE, "request2").iterator().next());
+  }
+
+  @Test
+  public void deleteRemovesTheStateAndItsIndexEntries() {
+    SellTicketState state = newState("saga1", "request1");
+    state.addInstanceKey("request2");
+    storage.save(state);
+    storage.save(newState("saga2", "request2"));
+
+    storage.delete("saga1");
+
+    assertNull(storage.load("saga1"));
+    assertTrue(storage.load(SAGA_TYPE, "request1").isEmpty());
+    assertEquals(1, storage.load(SAGA_TYPE, "request2").size());
+    assertEquals("saga2", storage.load(SAGA_TYPE, "request2").iterator().next().getSagaId());
+  }
+
+  @Test
+  public void loadAllReturnsAStateMatchingSeveralParamsOnce() {
+    SellTicketState state = newState("saga1", "request1");
+    state.addInstanceKey("request2");
+    storage.save(state);
+    storage.save(newState("saga2", "request3"));
+
+    List<String> sagaIds = storage.loadAll(Arrays.asList(
+        new InstanceKeySearchParam(SAGA_TYPE, "request1"),
+        new InstanceKeySearchParam(SAGA_TYPE, "request2"),
+        new InstanceKeySearchParam(SAGA_TYPE, "request3"),
+        new InstanceKeySearchParam(SAGA_TYPE, "unknown")))
+        .map(SagaState::getSagaId)
+        .sorted()
+        .collect(Collectors.toList());
+
+    assertEquals(Arrays.asList("saga1", "saga2"), sagaIds);
+  }
+
+  private static SellTicketState newState(String sagaId, String requestId) {
+    SellTicketState state = new SellTicketState();
+    state.setSagaId(sagaId);
+    state.setType(SAGA_TYPE);
+    state.setRequestId(requestId);
+    state.addInstanceKey(requestId);
+    return state;
+  }
+}
@@ -0,0 +1,122 @@
+package com.malush.saga.storage;
+
+import com.malush.saga.workflow.buy.SellTicketSaga;
+import com.malush.saga.workflow.buy.SellTicketState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CustomStorageTest {
+
+  private CustomStorage storage;
+
+  @Before
+  public void setUp() {
+    storage = new CustomStorage();
+  }
+
+  @After
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Test
+  public void coalescedDeltasAreReflectedInTheDB() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+
+    state.setCompensationTriggered(true);
+    storage.save(state);
+    state.setRmsCompensated(true);
+    storage.save(state);
+    state.setItmsCompensated(true);
+    state.setAmount(20);
+    storage.save(state);
+
+    SellTicketState stored = storage.getSagaStateFromDB("request1");
+    assertTrue(stored.isCompensationTriggered());
+    assertTrue(stored.isRmsCompensated());
+    assertTrue(stored.isItmsCompensated());
+    assertEquals(20, stored.getAmount(), 0);
+    assertEquals("retailer1", stored.getRetailerId());
+  }
+
+  @Test
+  public void laterValueOfAFieldWins() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+
+    state.setRmsCompensated(true);
+    storage.save(state);
+    state.setRmsCompensated(false);
+    state.setItmsCompensated(true);
+    storage.save(state);
+
+    SellTicketState stored = storage.getSagaStateFromDB("request1");
+    assertFalse(stored.isRmsCompensated());
+    assertTrue(stored.isItmsCompensated());
+  }
+
+  @Test
+  public void changesThatAreNotSavedDoNotReachTheDB() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+
+    // a handler still working on the state
+    state.setCompensationTriggered(true);
+    storage.flushDeltas();
+
+    assertFalse(storage.getSagaStateFromDB("request1").isCompensationTriggered());
+  }
+
+  @Test
+  public void compactedDeltasAreKeptInTheSnapshot() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+
+    for (int i = 1; i <= CustomStorage.COMPACTION_THRESHOLD * 2 + 1; i++) {
+      state.setAmount(i);
+      state.setRmsCompensated(i % 2 == 1);
+      storage.save(state);
+      storage.flushDeltas();
+    }
+    state.setCompensationTriggered(true);
+    storage.save(state);
+    storage.compactDB();
+
+    SellTicketState stored = storage.getSagaStateFromDB("request1");
+    assertEquals(CustomStorage.COMPACTION_THRESHOLD * 2 + 1, stored.getAmount(), 0);
+    assertTrue(stored.isRmsCompensated());
+    assertTrue(stored.isCompensationTriggered());
+    assertEquals(0, stored.getDirtyFields());
+  }
+
+  @Test
+  public void deletedSagaIsRemovedFromTheDB() {
+    SellTicketState state = newState("saga1", "request1");
+    storage.save(state);
+    state.setCompensationTriggered(true);
+    storage.save(state);
+
+    storage.delete("saga1");
+
+    assertNull(storage.getSagaStateFromDB("request1"));
+    assertTrue(storage.getUnfinishedSagasFromDB().isEmpty());
+  }
+
+  private static SellTicketState newState(String sagaId, String requestId) {
+    SellTicketState state = new SellTicketState();
+    state.setSagaId(sagaId);
+    state.setType(SellTicketSaga.class.getName());
+    state.setRequestId(requestId);
+    state.setRetailerId("retailer1");
+    state.setAmount(10);
+    state.addInstanceKey(requestId);
+    return state;
+  }
+}
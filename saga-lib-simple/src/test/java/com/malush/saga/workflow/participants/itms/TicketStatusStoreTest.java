@@ -0,0 +1,81 @@
+package com.malush.saga.workflow.participants.itms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TicketStatusStoreTest {
+
+  private TicketStatusStore store;
+
+  @Before
+  public void setUp() {
+    // few shards, so every shard has to grow several times
+    store = new TicketStatusStore(2);
+  }
+
+  @Test
+  public void ticketsSurviveTheGrowthOfTheirShard() {
+    int tickets = 10_000;
+    for (int i = 0; i < tickets; i++) {
+      store.set("request" + i, "retailer" + (i % 3), i % 2 == 0 ? ITMS.Status.SOLD : ITMS.Status.ACTIVATED);
+    }
+
+    for (int i = 0; i < tickets; i++) {
+      assertEquals(i % 2 == 0 ? ITMS.Status.SOLD : ITMS.Status.ACTIVATED, store.get("request" + i));
+    }
+    assertNull(store.get("unknown"));
+    long total = 0;
+    for (int r = 0; r < 3; r++) {
+      total += store.count("retailer" + r, ITMS.Status.SOLD) + store.count("retailer" + r, ITMS.Status.ACTIVATED);
+    }
+    assertEquals(tickets, total);
+  }
+
+  @Test
+  public void setReturnsThePreviousStatus() {
+    assertNull(store.set("request1", "retailer1", ITMS.Status.SOLD));
+    assertEquals(ITMS.Status.SOLD, store.set("request1", "retailer1", ITMS.Status.ACTIVATED));
+    assertEquals(ITMS.Status.ACTIVATED, store.get("request1"));
+  }
+
+  @Test
+  public void setAllSkipsUnknownTicketsAndCountsDuplicatesOnce() {
+    store.set("request1", "retailer1", ITMS.Status.SOLD);
+    store.set("request2", "retailer1", ITMS.Status.SOLD);
+    store.set("request3", "retailer2", ITMS.Status.ACTIVATED);
+
+    int changed = store.setAll(Arrays.asList("request1", "unknown", "request1", "request2", "request3"), ITMS.Status.ACTIVATED);
+
+    assertEquals(2, changed);
+    assertEquals(ITMS.Status.ACTIVATED, store.get("request1"));
+    assertEquals(ITMS.Status.ACTIVATED, store.get("request2"));
+    assertNull(store.get("unknown"));
+    assertEquals(0, store.count("retailer1", ITMS.Status.SOLD));
+    assertEquals(2, store.count("retailer1", ITMS.Status.ACTIVATED));
+    assertEquals(1, store.count("retailer2", ITMS.Status.ACTIVATED));
+    assertEquals(0, store.setAll(Collections.emptyList(), ITMS.Status.SOLD));
+  }
+
+  @Test
+  public void countsFollowStatusAndRetailerChanges() {
+    store.set("request1", "retailer1", ITMS.Status.SOLD);
+    store.set("request2", "retailer1", ITMS.Status.SOLD);
+    assertEquals(2, store.count("retailer1", ITMS.Status.SOLD));
+
+    store.set("request1", "retailer1", ITMS.Status.ACTIVATED);
+    assertEquals(1, store.count("retailer1", ITMS.Status.SOLD));
+    assertEquals(1, store.count("retailer1", ITMS.Status.ACTIVATED));
+
+    // the same ticket reported by another retailer moves over to that retailer
+    store.set("request2", "retailer2", ITMS.Status.ACTIVATED);
+    assertEquals(0, store.count("retailer1", ITMS.Status.SOLD));
+    assertEquals(1, store.count("retailer2", ITMS.Status.ACTIVATED));
+    assertEquals(0, store.count("unknownRetailer", ITMS.Status.SOLD));
+  }
+}